@@ -29,15 +29,13 @@ package logic;
  */
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
 
+import model.CellSet;
 import model.Goal;
 import model.Inventory;
+import model.PackedState;
 import model.Position;
 import model.State;
 import model.World;
@@ -53,17 +51,61 @@ public class Agent {
 	
 	private char last_view[][]; // last view received by server
 	
-	// Size of the local map (i.e. how far the agent can explore)
-	public static final int LOCAL_MAP_SIZE = 160;
-	
 	public static int MAX_MOVES = 10000;
 	
+	// Plan in server actions (turns, chop/open/blast, forward) rather than cells moved
+	public static boolean PLAN_IN_ACTIONS = true;
+	
+	// States the action-optimal search may reach before we settle for a greedy plan instead
+	public static int MAX_OPTIMAL_PLAN_NODES = 250000;
+	
+	// States any table-based search may reach before we switch to the memory-bounded IDA* search
+	public static int MAX_PLAN_NODES = 8000000;
+	
+	// log2 of the IDA* transposition table size, and the expansions after which it gives up
+	public static int IDA_TABLE_BITS = 20;
+	public static long MAX_IDA_EXPANSIONS = 200000000L;
+	
+	// Try Jump Point Search over empty floor before searching with items
+	public static boolean USE_JUMP_POINTS = true;
+	
+	// Then try a bidirectional search for a way that uses nothing up
+	public static boolean USE_BIDIRECTIONAL = true;
+	
+	// Explored area (in cells) above which item plans are made on the region graph first
+	public static int REGION_PLANNING_AREA = 1600;
+	
+	// Wall clock time (ms) a plan search may take per turn, 0 to always search to completion
+	public static int PLAN_BUDGET_MS = 1000;
+	
+	// Wall clock time (ms) the portfolio races its planners for when PLAN_BUDGET_MS is 0 (it always needs a deadline)
+	public static int PORTFOLIO_BUDGET_MS = 1000;
+	
+	// Heuristic weight the anytime search starts with, and how much it is lowered each pass
+	public static double PLAN_START_WEIGHT = 3.0;
+	public static double PLAN_WEIGHT_STEP = 0.5;
+	
+	// Threads to spread the cheapest plan search over (HDA*), 0 or 1 to search on this thread
+	public static int PARALLEL_PLAN_THREADS = 0;
+	
+	// Race several planners on their own threads and take the first plan (see PortfolioPlanner)
+	public static boolean USE_PORTFOLIO = false;
+	
+	// Keep the distance to the nearest place worth exploring up to date, rather than searching for it each time
+	public static boolean USE_FRONTIER_FIELD = true;
+	
+	// Explore where the view would show the most unexplored cells per step of the way, rather than the nearest place
+	public static boolean EXPLORE_BY_GAIN = false;
+	
+	// Print a summary of the game's plan searches (see SearchStats) to stderr when the agent exits, for debugging
+	public static boolean PRINT_SEARCH_STATS = false;
+	
 	// Width and height of view we get from server
 	public static final int VIEW_SIZE = 5; 
 	public static final int VIEW_HALF_SIZE = 2; 
 	// Agent initially starts here
-	private static final int START_X = LOCAL_MAP_SIZE / 2;
-	private static final int START_Y = LOCAL_MAP_SIZE / 2;
+	private static final int START_X = World.START_X;
+	private static final int START_Y = World.START_Y;
 
 	private int posx, posy; // x, y position
 
@@ -87,6 +129,21 @@ public class Agent {
 	//private PriorityQueue<Goal> goals; // potential goals
 	//private PriorityQueue<Goal> pathableGoals; // goals that can be traversed
 	private Goal gold; // gold goal
+	private DStarLite returnPlanner; // incremental planner for the way back once we hold the gold
+	private JumpPointSearch jumpPoints; // item-free planner, tried before the full A* search
+	private AnytimeAStar anytime; // plan search that keeps to a time budget
+	private BidirectionalSearch bidirectional; // search from both ends for ways that use nothing up
+	private RegionPlanner regions; // item plans on the graph of regions, once the map is big
+	private ParallelAStar parallel; // plan search spread over several threads
+	private PortfolioPlanner portfolio; // planners raced against each other
+	private FrontierField frontier; // distances to the nearest exploration target, repaired every view
+	private FloodFill exploreFill; // queue and visited cells for the breadth-first explore search
+	
+	private int statesPruned; // states the last A* search discarded as dominated
+	private boolean searchCutOff; // whether the last A* search gave up at its node limit
+	private int searchesAvoided; // turns the path being followed was still valid, so no search was needed
+	private int searchesSkipped; // plan searches given up before they started, the goal being cut off from us
+	private SearchStats searchStats; // metrics of every plan search this game
 	
 	public Agent() {
 		views = new LinkedList<IAgentView>();
@@ -106,6 +163,8 @@ public class Agent {
 		//goals = new PriorityQueue<Goal>();
 		//pathableGoals = new PriorityQueue<Goal>();
 		gold = null; // not found
+		
+		searchStats = new SearchStats();
 	}
 	
 	// adds a view to our view list
@@ -170,16 +229,47 @@ public class Agent {
 	}
 	// Get the character at the given position
 	public char charAt(int x, int y) {
-		return w.w[y][x];
+		return w.cell(x, y);
 	}
 	
 	public int getTurnNumber() {
 		return turnNumber;
 	}
 	
+	// Get the number of states the last A* search discarded as dominated
+	public int getStatesPruned() {
+		return statesPruned;
+	}
+	
+	// Get the number of turns we kept following a still valid path instead of searching again
+	public int getSearchesAvoided() {
+		return searchesAvoided;
+	}
+	
+	// Get the number of plan searches skipped because the goal could not be reached with anything we could get
+	public int getSearchesSkipped() {
+		return searchesSkipped;
+	}
+	
+	// whether we hold anything that clears the way
+	private boolean holdsTools() {
+		return getItems('a') > 0 || getItems('k') > 0 || getItems('d') > 0;
+	}
+	
+	// Get the metrics of every plan search so far
+	public SearchStats getSearchStats() {
+		return searchStats;
+	}
+	
+	// Get how often each racing planner won and how long it took, empty if they haven't raced
+	public String getPortfolioStatistics() {
+		return portfolio == null ? "" : portfolio.getStatistics();
+	}
+	
 	/** returns whether a block can be moved into **/
 	public boolean canMoveInto(char block) {
-		return (block != '*' && block != '-' && (block != 'T' || getItems('a') > 0) && block != 'x' && block != '~');
+		int flags = World.FLAGS[World.typeOf(block)];
+		return (flags & World.WALKABLE) != 0 || ((flags & World.CHOPPABLE) != 0 && getItems('a') > 0);
 	}
 	
 	/**
@@ -189,7 +279,7 @@ public class Agent {
 	 * @return - whether a block can be traversed.
 	 */
 	public static boolean canMoveThrough(char block) {
-		return (block != '*' && block != '-' && block != 'T');
+		return (World.FLAGS[World.typeOf(block)] & (World.CHOPPABLE | World.OPENABLE | World.BLASTABLE)) == 0;
 	}
 	
 	public void handle_action(int action) {
@@ -201,17 +291,17 @@ public class Agent {
 			direction = (direction + 3) % 4;
 		} else if ((action == 'F') || (action == 'f')) {
 			int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
-			if (canMoveInto(w.w[posy+moveVectors[direction][1]][posx+moveVectors[direction][0]])) {
+			if (canMoveInto(w.cell(posx+moveVectors[direction][0], posy+moveVectors[direction][1]))) {
 				posx += moveVectors[direction][0];
 				posy += moveVectors[direction][1];
-				handleMoveInto(w.w[posy][posx]);
+				handleMoveInto(w.cell(posx, posy));
 			}
 		} else if ((action == 'C') || (action == 'c')) { // chop down NOTE: if chops, will always think it's clear in front
 			int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
-			w.w[posy+moveVectors[direction][1]][posx+moveVectors[direction][0]] = ' ';
+			w.set(posx+moveVectors[direction][0], posy+moveVectors[direction][1], ' ');
 		} else if ((action == 'B') || (action == 'b')) { // blast NOTE: if blast, will always think it's clear in front
 			int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
-			w.w[posy+moveVectors[direction][1]][posx+moveVectors[direction][0]] = ' ';
+			w.set(posx+moveVectors[direction][0], posy+moveVectors[direction][1], ' ');
 			inventory.use('d'); // use dynamite
 		}
 	}
@@ -249,13 +339,21 @@ public class Agent {
 		
 		w.update(posx, posy, view);
 		
+		if (USE_FRONTIER_FIELD) {
+			if (frontier == null) {
+				frontier = new FrontierField(w, inventory);
+			} else {
+				frontier.update(w.getChanges(), inventory);
+			}
+		}
+		
 		// update new goals if we can find a more interesting one based on the new information.
 		for (int y = posy - VIEW_HALF_SIZE; y <= posy + VIEW_HALF_SIZE; ++y) {
 			for (int x = posx - VIEW_HALF_SIZE; x <= posx + VIEW_HALF_SIZE; ++x) {
-				if (w.isInteresting(w.w[y][x])) {
+				if ((w.flags(x, y) & World.ITEM) != 0) {
 					//Goal goalToAdd = createNewGoal(x, y);
 					//System.out.println("Spotted new goal " + goalToAdd);
-					if (w.w[y][x] == 'g') { // found the gold!
+					if (w.cell(x, y) == 'g') { // found the gold!
 						gold = createNewGoal(x, y);
 					}
 					//if (goals.contains(goalToAdd)) {
@@ -276,21 +374,67 @@ public class Agent {
 			currentGoal = pathableGoals.poll();
 		}*/
 		
-		// If we have gold, find the path to the start.
+		// If we have gold, find the path to the start (unless the one we are following still works).
+		boolean stillValid = false; // checked currentGoal this turn and it still works
 		if (inventory.get('g') > 0) {
-			Goal immediateGoal = createNewGoal(START_X, START_Y);
-			immediateGoal.setPath(searchAStar(START_X, START_Y, posx, posy));
-			currentGoal = immediateGoal;
+			boolean returning = currentGoal != null && currentGoal.x == START_X && currentGoal.y == START_Y;
+			if (returning && currentGoal.isValid(w, inventory, posx, posy)) {
+				updateReturnPlanner();
+				searchesAvoided++;
+				stillValid = true;
+			} else {
+				Goal immediateGoal = createNewGoal(START_X, START_Y);
+				immediateGoal.setPath(planReturn());
+				currentGoal = immediateGoal;
+			}
 		}
 		
-		// if we reached the goal, or no goal, find a new goal
-		if (currentGoal == null || (posx == currentGoal.x && posy == currentGoal.y)) {
+		// if we reached the goal, no goal, or what we saw made its path stale, find a new goal
+		if (currentGoal == null || (posx == currentGoal.x && posy == currentGoal.y)
+				|| (!stillValid && !currentGoal.isValid(w, inventory, posx, posy))) {
 			currentGoal = findGoal();
 		}
 		
 		this.turnNumber ++;
 	}
 	
+	/**
+	 * Plans the way back to the start once we hold the gold.
+	 * The D* Lite planner keeps its search from turn to turn and only repairs it for what the
+	 * last view and action changed. If there is no way back without dynamite, plan with A*.
+	 * 
+	 * @return - the path back to the start, or null if there isn't one
+	 */
+	private List<State> planReturn() {
+		updateReturnPlanner();
+		SearchStats.Record stats = searchStats.begin("D* Lite", turnNumber, posx, posy, START_X, START_Y);
+		List<State> path = returnPlanner.getPath(inventory);
+		stats.expanded = returnPlanner.getExpanded();
+		stats.peakOpen = returnPlanner.getPeakOpen();
+		searchStats.end(stats, path != null);
+		if (path == null) {
+			path = searchAStar(START_X, START_Y, posx, posy);
+		}
+		return path;
+	}
+	
+	/**
+	 * Tells the return planner where we are and what the last view and action changed.
+	 * This has to happen every turn, even when we don't need a new path, for the planner
+	 * to see every change.
+	 */
+	private void updateReturnPlanner() {
+		if (returnPlanner == null || returnPlanner.isStale()) {
+			returnPlanner = new DStarLite(w, inventory);
+			returnPlanner.moveTo(posx, posy, direction);
+			returnPlanner.addGoal(START_X, START_Y);
+		}
+		// move first, so the changes are keyed against where we are now
+		returnPlanner.moveTo(posx, posy, direction);
+		returnPlanner.setInventory(inventory);
+		returnPlanner.refresh(w.getChanges());
+	}
+	
 	// rotate a view into north direction (world space) given the existing
 	// direction
 	public char[][] rotate_view(char view[][], int dir) {
@@ -340,12 +484,12 @@ public class Agent {
 		//for (Goal goal : goals) {
 		//System.out.println("Goal head: " + goal);
 		// check to see if the goal still needs to be calculated (i.e. we might have picked it up already)
-		//if (w.w[gold.y][gold.x] != goal.type) {
+		//if (w.cell(gold.x, gold.y) != goal.type) {
 		//	removedGoals.add(goal);
 		//	continue;
 		//}
 		// only goal is gold - experimental (i.e. don't use A* to find dynamite and stuff, because A* does this)
-		//if (w.w[goal.y][goal.x] != 'g') {
+		//if (w.cell(goal.x, goal.y) != 'g') {
 		//	continue;
 		//}
 		List<State> path = searchAStar(gold.x, gold.y, posx, posy);
@@ -436,71 +580,355 @@ public class Agent {
 	}
 	
 	/**
-	 * Uses breadth-first search to find the closest unexplored cell.
+	 * Finds the closest cell holding an item or next to unexplored cells, by walking down the
+	 * frontier field (or with breadth-first search without USE_FRONTIER_FIELD).
 	 * @return
 	 */
 	public Goal explore() {
-		State g = null;
-		State s = new State(w, inventory, posx, posy), head;
-		Queue<State> open = new LinkedList<State>();
-		HashSet<State> explored = new HashSet<State>();
-		open.add(s);
-		explored.add(s);
-		while (open.isEmpty() == false) {
-			
-			head = open.poll();
-			
-			//System.out.println("explore " + head);
-			//if (w.w[head.y][head.x] == 'x') {
-			if (hasNeighboursUnexplored(head.x, head.y) || w.isInteresting(w.w[head.y][head.x])) {
-				//System.out.println(" -> decided " + head);
-				Goal result = new Goal(head.x, head.y, ' ', 20);
-				result.setPath(pathFind(head));
+		if (EXPLORE_BY_GAIN) {
+			return exploreByGain();
+		}
+		if (USE_FRONTIER_FIELD && frontier != null) {
+			SearchStats.Record stats = searchStats.begin("frontier", turnNumber, posx, posy, posx, posy);
+			stats.expanded = frontier.getRepaired();
+			List<State> path = frontier.nearest(posx, posy, inventory);
+			searchStats.end(stats, path != null);
+			if (path == null) {
+				return null;
+			}
+			State head = path.get(path.size() - 1);
+			stats.goalX = head.x;
+			stats.goalY = head.y;
+			Goal result = new Goal(head.x, head.y, ' ', 20);
+			result.setPath(path);
+			return result;
+		}
+		return exploreBFS();
+	}
+	
+	/**
+	 * Uses breadth-first search to find the closest unexplored cell.
+	 * The search runs over cell indexes in reused arrays, so it makes no garbage per cell;
+	 * States are only made for the path it returns.
+	 * @return
+	 */
+	private Goal exploreBFS() {
+		if (exploreFill == null || exploreFill.capacity() < w.cellCount()) {
+			exploreFill = new FloodFill(w.cellCount());
+		}
+		boolean hasAxe = inventory.get('a') > 0;
+		boolean hasKey = inventory.get('k') > 0;
+		SearchStats.Record stats = searchStats.begin("explore BFS", turnNumber, posx, posy, posx, posy);
+		stats.expanded = 0;
+		exploreFill.start();
+		exploreFill.visit(w.index(posx, posy), FloodFill.NONE);
+		while (!exploreFill.isEmpty()) {
+			int head = exploreFill.poll();
+			int x = w.indexX(head), y = w.indexY(head);
+			stats.expanded++;
+			if (hasNeighboursUnexplored(x, y) || (w.flags(x, y) & World.ITEM) != 0) {
+				stats.goalX = x;
+				stats.goalY = y;
+				searchStats.end(stats, true);
+				Goal result = new Goal(x, y, ' ', 20);
+				result.setPath(pathFind(exploreFill, head));
 				return result;
-			} else {
-				head.fromDirection = direction;
-				List<State> neighbours = head.getNeighbours(false); // don't wanna use items
-				for (State neighbour : neighbours) {
-					//System.out.println("Neighbour of " + head + ": " + neighbour);
-					if (!explored.contains(neighbour)) {
-						neighbour.predecessor = head;
-						explored.add(neighbour);
-						open.add(neighbour);
-					}
+			}
+			// don't wanna use items
+			for (int [] v : moveVectors) {
+				int nx = x + v[0], ny = y + v[1];
+				if (w.inVisibleBounds(nx, ny) && FrontierField.canExplore(w.type(nx, ny), hasAxe, hasKey)) {
+					exploreFill.visit(w.index(nx, ny), head);
 				}
 			}
 		}
-		
+		searchStats.end(stats, false);
 		return null;
 	}
+	/**
+	 * Breadth-first search over every cell we can explore to, scoring each place explore() would
+	 * consider by how many unexplored cells its view would show (an item counts as a full view)
+	 * divided by the steps to get there. Picks the best scoring place, the nearest of equals.
+	 * @return
+	 */
+	private Goal exploreByGain() {
+		if (exploreFill == null || exploreFill.capacity() < w.cellCount()) {
+			exploreFill = new FloodFill(w.cellCount());
+		}
+		boolean hasAxe = inventory.get('a') > 0;
+		boolean hasKey = inventory.get('k') > 0;
+		SearchStats.Record stats = searchStats.begin("explore by gain", turnNumber, posx, posy, posx, posy);
+		stats.expanded = 0;
+		int best = FloodFill.NONE;
+		double bestScore = 0;
+		exploreFill.start();
+		exploreFill.visit(w.index(posx, posy), FloodFill.NONE);
+		while (!exploreFill.isEmpty()) {
+			int head = exploreFill.poll();
+			int x = w.indexX(head), y = w.indexY(head);
+			stats.expanded++;
+			boolean item = (w.flags(x, y) & World.ITEM) != 0;
+			if (item || hasNeighboursUnexplored(x, y)) {
+				int gain = item ? VIEW_SIZE * VIEW_SIZE : w.unexploredInView(x, y);
+				double score = gain / (double) (exploreFill.depth(head) + 1);
+				if (score > bestScore) {
+					best = head;
+					bestScore = score;
+				}
+			}
+			for (int [] v : moveVectors) {
+				int nx = x + v[0], ny = y + v[1];
+				if (w.inVisibleBounds(nx, ny) && FrontierField.canExplore(w.type(nx, ny), hasAxe, hasKey)) {
+					exploreFill.visit(w.index(nx, ny), head);
+				}
+			}
+		}
+		searchStats.end(stats, best != FloodFill.NONE);
+		if (best == FloodFill.NONE) {
+			return null;
+		}
+		stats.goalX = w.indexX(best);
+		stats.goalY = w.indexY(best);
+		Goal result = new Goal(stats.goalX, stats.goalY, ' ', 20);
+		result.setPath(pathFind(exploreFill, best));
+		return result;
+	}
+	
+	/**
+	 * Finds a plan from the given position to the goal cell.
+	 * If the goal can be reached over empty floor, Jump Point Search finds the way without
+	 * expanding every cell of it. If it can be reached without using anything up (chopping and
+	 * opening with what we hold), a bidirectional search from both ends finds the cheapest such
+	 * way. Otherwise, once the map is big, the item plan is made on the graph of regions and the
+	 * obstacles between them. Only when that fails too do we search plan States cell by cell.
+	 * With USE_PORTFOLIO the planners are first raced on their own threads instead.
+	 * 
+	 * @return - the path to the goal, or null if there isn't one
+	 */
 	public List<State> searchAStar(int goalX, int goalY, int currentX, int currentY) {
-		PriorityQueue<State> queue = new PriorityQueue<State>();
-		Set<State> explored = new HashSet<State>();
-		
-		// Create the goal state based on params.
-		State goal = new State(w, null, goalX, goalY);
-		
+		// the connected components of the walkable cells can tell some searches will fail before they start
+		boolean walkable = w.component(goalX, goalY) != World.NO_COMPONENT && w.component(currentX, currentY) != World.NO_COMPONENT;
+		boolean connected = walkable && w.connected(goalX, goalY, currentX, currentY);
+		if (walkable && !connected && !holdsTools() && w.toolsInComponent(currentX, currentY) == 0) {
+			// nothing to clear the way with, here or anywhere we can get to
+			searchesSkipped++;
+			return null;
+		}
+		long started = System.nanoTime();
+		long deadline = Long.MAX_VALUE; // only kept to when planning on a time budget (the portfolio always is)
+		if (PLAN_BUDGET_MS > 0) {
+			deadline = started + PLAN_BUDGET_MS * 1000000L;
+		} else if (USE_PORTFOLIO) {
+			deadline = started + PORTFOLIO_BUDGET_MS * 1000000L;
+		}
+		if (USE_PORTFOLIO) {
+			if (portfolio == null) {
+				portfolio = new PortfolioPlanner(PortfolioPlanner.defaultStrategies(PLAN_START_WEIGHT, PLAN_WEIGHT_STEP, MAX_OPTIMAL_PLAN_NODES));
+			}
+			SearchStats.Record stats = searchStats.begin("portfolio", turnNumber, currentX, currentY, goalX, goalY);
+			List<State> path = portfolio.plan(w, inventory, goalX, goalY, currentX, currentY, direction, turnNumber, deadline);
+			searchStats.end(stats, path != null);
+			if (path != null) {
+				return path;
+			}
+		}
+		if (USE_JUMP_POINTS && !(walkable && !connected)) { // it only walks over floor
+			if (jumpPoints == null) {
+				jumpPoints = new JumpPointSearch(w);
+			}
+			SearchStats.Record stats = searchStats.begin("jump points", turnNumber, currentX, currentY, goalX, goalY);
+			List<State> path = jumpPoints.search(goalX, goalY, currentX, currentY, direction, inventory, deadline);
+			stats.expanded = jumpPoints.getExpanded();
+			stats.peakOpen = jumpPoints.getPeakOpen();
+			searchStats.end(stats, path != null);
+			if (path != null) {
+				return path;
+			}
+		}
+		if (USE_BIDIRECTIONAL && !(walkable && !connected && getItems('a') == 0 && getItems('k') == 0)) { // it clears only trees and doors, with what we hold
+			if (bidirectional == null) {
+				bidirectional = new BidirectionalSearch(w);
+			}
+			SearchStats.Record stats = searchStats.begin("bidirectional", turnNumber, currentX, currentY, goalX, goalY);
+			List<State> path = bidirectional.search(goalX, goalY, currentX, currentY, direction, inventory, deadline);
+			stats.expanded = bidirectional.getExpanded();
+			stats.peakOpen = bidirectional.getPeakOpen();
+			searchStats.end(stats, path != null);
+			if (path != null) {
+				return path;
+			}
+		}
+		if ((w.maxx - w.minx + 1) * (w.maxy - w.miny + 1) > REGION_PLANNING_AREA) {
+			if (regions == null) {
+				regions = new RegionPlanner(w);
+			}
+			SearchStats.Record stats = searchStats.begin("regions", turnNumber, currentX, currentY, goalX, goalY);
+			List<State> path = regions.plan(goalX, goalY, currentX, currentY, inventory);
+			stats.expanded = regions.getExpanded();
+			stats.peakOpen = regions.getPeakOpen();
+			searchStats.end(stats, path != null);
+			if (path != null) {
+				return path;
+			}
+		}
+		List<State> path;
+		if (System.nanoTime() > deadline) {
+			// the portfolio used up the budget, take the first plan we find rather than search for a better one
+			path = searchAStar(goalX, goalY, currentX, currentY, false, MAX_PLAN_NODES);
+		} else if (!PLAN_IN_ACTIONS) {
+			path = searchAStar(goalX, goalY, currentX, currentY, false, MAX_PLAN_NODES);
+		} else if (PARALLEL_PLAN_THREADS > 1) {
+			path = searchParallel(goalX, goalY, currentX, currentY);
+			if (path == null && searchCutOff) {
+				// too many states to find the cheapest plan, take the first one we find
+				path = searchAStar(goalX, goalY, currentX, currentY, false, MAX_PLAN_NODES);
+			}
+		} else if (PLAN_BUDGET_MS > 0) {
+			// the anytime search gets the first half of the budget, so the quick search usually fits in the rest
+			path = searchAnytime(goalX, goalY, currentX, currentY, started + (deadline - started) / 2);
+			if (path == null && searchCutOff) {
+				// out of time before any plan turned up, take the first one we find (however long it takes,
+				// as waiting for a plan would cost moves)
+				path = searchAStar(goalX, goalY, currentX, currentY, false, MAX_PLAN_NODES);
+			}
+		} else {
+			path = searchAStar(goalX, goalY, currentX, currentY, true, MAX_OPTIMAL_PLAN_NODES);
+			if (path == null && searchCutOff) {
+				// too many item/destroyed combinations to find the cheapest plan, take the first one we find
+				path = searchAStar(goalX, goalY, currentX, currentY, false, MAX_PLAN_NODES);
+			}
+		}
+		if (path == null && searchCutOff) {
+			// too many states to keep in memory at all, search depth first instead
+			path = searchIDAStar(goalX, goalY, currentX, currentY);
+		}
+		return path;
+	}
+	
+	/**
+	 * Parallel (HDA*) search in actions from the given position to the goal cell, on
+	 * PARALLEL_PLAN_THREADS threads (sets searchCutOff if it gave up at its node limit).
+	 * 
+	 * @return - the cheapest path to the goal, or null if there isn't one (or we gave up)
+	 */
+	private List<State> searchParallel(int goalX, int goalY, int currentX, int currentY) {
+		if (!w.inBounds(goalX,  goalY) || !canMoveInto(w.cell(goalX, goalY))) {
+			return null;
+		}
+		if (parallel == null) {
+			parallel = new ParallelAStar(PARALLEL_PLAN_THREADS);
+		}
+		State initial = new State(w, inventory, currentX, currentY);
+		initial.move = turnNumber; // prevents infinite branching terminate at 10000 moves
+		initial.facing = direction;
+		SearchStats.Record stats = searchStats.begin("parallel A*", turnNumber, currentX, currentY, goalX, goalY);
+		List<State> path = parallel.search(initial, goalX, goalY, MAX_OPTIMAL_PLAN_NODES);
+		searchCutOff = parallel.isCutOff();
+		stats.expanded = parallel.getExpanded();
+		stats.closed = parallel.getReached();
+		searchStats.end(stats, path != null);
+		return path;
+	}
+	
+	/**
+	 * Memory-bounded (IDA*) search in actions from the given position to the goal cell.
+	 * 
+	 * @return - the path to the goal, or null if there isn't one (or the search gave up)
+	 */
+	private List<State> searchIDAStar(int goalX, int goalY, int currentX, int currentY) {
+		if (!w.inBounds(goalX,  goalY) || !canMoveInto(w.cell(goalX, goalY))) {
+			return null;
+		}
+		State initial = new State(w, inventory, currentX, currentY);
+		initial.move = turnNumber; // prevents infinite branching terminate at 10000 moves
+		initial.facing = direction;
+		SearchStats.Record stats = searchStats.begin("IDA*", turnNumber, currentX, currentY, goalX, goalY);
+		IDAStar search = new IDAStar(PLAN_START_WEIGHT, IDA_TABLE_BITS, MAX_IDA_EXPANSIONS);
+		List<State> path = search.search(initial, goalX, goalY, Long.MAX_VALUE);
+		stats.expanded = search.getExpanded();
+		searchStats.end(stats, path != null);
+		return path;
+	}
+	
+	/**
+	 * Anytime search in actions from the given position to the goal cell, returning the best plan
+	 * found by the deadline (sets searchCutOff if the deadline or node limit ran out).
+	 * 
+	 * @param deadline - System.nanoTime() by which to return
+	 * @return - the path to the goal, or null if there isn't one (or none was found in time)
+	 */
+	private List<State> searchAnytime(int goalX, int goalY, int currentX, int currentY, long deadline) {
+		if (!w.inBounds(goalX,  goalY) || !canMoveInto(w.cell(goalX, goalY))) {
+			return null;
+		}
+		if (anytime == null) {
+			anytime = new AnytimeAStar(w, PLAN_START_WEIGHT, PLAN_WEIGHT_STEP);
+		}
+		State initial = new State(w, inventory, currentX, currentY);
+		initial.move = turnNumber; // prevents infinite branching terminate at 10000 moves
+		initial.facing = direction;
+		SearchStats.Record stats = searchStats.begin("anytime A*", turnNumber, currentX, currentY, goalX, goalY);
+		List<State> path = anytime.search(initial, goalX, goalY, deadline, MAX_OPTIMAL_PLAN_NODES);
+		searchCutOff = anytime.isOutOfTime();
+		statesPruned = anytime.getPruned();
+		stats.expanded = anytime.getExpanded();
+		stats.peakOpen = anytime.getPeakOpen();
+		stats.closed = anytime.getReached();
+		stats.pruned = statesPruned;
+		searchStats.end(stats, path != null);
+		return path;
+	}
+	
+	/**
+	 * A* search over plan States from the given position to the goal cell.
+	 * 
+	 * @param inActions - track facing and find the plan with the fewest server actions; otherwise
+	 *                    just find a plan quickly, ordering states by straight line distance to the goal
+	 * @param maxNodes - give up, setting searchCutOff, once this many states have been reached
+	 * @return - the path to the goal, or null if there isn't one (or we gave up)
+	 */
+	private List<State> searchAStar(int goalX, int goalY, int currentX, int currentY, boolean inActions, int maxNodes) {
 		// Unpathable goal do not bother searching or we will cause an infinite loop.
-		if (!w.inBounds(goalX,  goalY) || !canMoveInto(w.w[goalY][goalX])) {
+		if (!w.inBounds(goalX,  goalY) || !canMoveInto(w.cell(goalX, goalY))) {
 			return null;
 		}
 		
+		OpenList queue = new OpenList();
+		// g-cost, parent and closed flag of every state reached, in packed form
+		StateTable nodes = new StateTable();
+		Interner<CellSet> destroyedSets = new Interner<CellSet>();
+		// closed states, grouped so states they dominate can be dropped
+		DominanceSet closed = new DominanceSet(nodes);
+		
+		// Create the goal state based on params.
+		State goal = new State(w, null, goalX, goalY);
+		
 		// Add the current state.
 		State initial = new State(w, inventory, currentX, currentY);
 		initial.move = turnNumber; // prevents infinite branching terminate at 10000 moves
 		
-		queue.add(initial);
+		if (inActions) {
+			initial.facing = direction;
+		}
+		
+		searchCutOff = false;
+		SearchStats.Record stats = searchStats.begin(inActions ? "A*" : "quick A*", turnNumber, currentX, currentY, goalX, goalY);
+		stats.expanded = 0;
+		stats.peakOpen = 0;
 		
 		initial.cost = 0;		
-		initial.fcost = initial.cost(goal);
+		initial.fcost = priority(initial, goal);
+		initial.node = nodes.add(PackedState.pack(initial), destroyedSets.intern(initial.destroyed), 0, StateTable.NONE);
+		
+		queue.add(initial);
 		
-		HashSet<State> seen = new HashSet<State>();
 		State current = null;
 		// A star!
 		//System.out.println("search A* is working towards " + goal);
 		while (!queue.isEmpty()) {
 			
 			// Take the top element
+			stats.peakOpen = Math.max(stats.peakOpen, queue.size());
 			current = queue.poll();
 			//System.out.print(".");
 			//System.out.println(current);
@@ -508,53 +936,78 @@ public class Agent {
 			//if (current.equals(goal)) {
 			if (current.x == goal.x && current.y == goal.y) {
 				// Save the current state, finish the loop.
-				//System.out.println("Search A* finished, explored " + explored.size() + " states.");
-				return pathFind(current);
+				//System.out.println("Search A* finished, explored " + nodes.size() + " states.");
+				statesPruned = closed.getPruned();
+				endSearch(stats, nodes.size(), true);
+				return pathFind(nodes, destroyedSets, current.node);
+			}
+			
+			if (nodes.size() > maxNodes) {
+				searchCutOff = true;
+				break;
 			}
-			//System.out.println("Exploring " + current + " towards " + goal);
-			//for (State s : explored) {
-				//System.out.println("   Explored: " + s);
-			//}
 			
 			// Remove the element from the queue and add it to our explored set.
-			explored.add(current);
+			closed.close(current.node);
+			stats.expanded++;
 			
 			// Get all possible next moves.
 			List<State> neighbours = current.getNeighbours(true); // wanna use items
 
 			// Iterate through all next possible moves, find new, unexplored moves to explore.
-			if (neighbours != null) {
-				for (State neighbour : neighbours) {
-					int potentialCost = current.cost + neighbour.cost(current);
-					if (!seen.contains(neighbour)) { // if (neighbour has no cost) !neighbour.getCost()) {
-						seen.add(neighbour);
-						neighbour.cost = potentialCost;
-					}
-					if (explored.contains(neighbour)) {
-						if (potentialCost >= neighbour.cost) {
-							// ignore the neighbour since we've already explored it from another path
-							// and the new path to the neighbour isn't any better.
-						}
-					} else if (!queue.contains(neighbour) || potentialCost < neighbour.cost) {
-						// Map where we came from (to pathfind).
-						neighbour.predecessor = current;
-						// Update costs.
-						neighbour.cost = potentialCost;
-						neighbour.fcost = neighbour.cost(goal);
-						if (!queue.contains(neighbour)) {
-							//System.out.println(current + " -> +" + neighbour);
-							queue.add(neighbour);
-						}
+			for (State neighbour : neighbours) {
+				long key = PackedState.pack(neighbour);
+				int set = destroyedSets.intern(neighbour.destroyed);
+				int node = nodes.find(key, set);
+				int potentialCost = current.cost + neighbour.stepCost(current);
+				if (node == StateTable.NONE) {
+					if (closed.isDominated(key, set, potentialCost)) {
+						// somewhere we've already expanded, with no fewer items for no more cost
+						continue;
 					}
+					neighbour.node = nodes.add(key, set, potentialCost, current.node);
+					neighbour.cost = potentialCost;
+					neighbour.fcost = priority(neighbour, goal);
+					queue.add(neighbour);
+				} else if (nodes.isClosed(node)) {
+					// already expanded from another path, with a cost no worse than this one
+				} else if (potentialCost < nodes.g(node)) {
+					// cheaper way into a state that is already queued, re-parent it in place
+					nodes.relax(node, potentialCost, current.node);
+					State queued = queue.get(neighbour);
+					queued.move = neighbour.move;
+					queued.cost = potentialCost;
+					queued.fcost = priority(queued, goal);
+					queue.decreaseKey(queued);
 				}
 			}
 		}
 		//System.out.println();
-		//System.out.println("Search A* failed, explored " + explored.size() + " states, result: ");
+		//System.out.println("Search A* failed, explored " + nodes.size() + " states, result: ");
 		// We haven't found a viable path to take.
+		statesPruned = closed.getPruned();
+		endSearch(stats, nodes.size(), false);
 		return null;
 	}
 	
+	// records the end of an A* search that reached the given number of states
+	private void endSearch(SearchStats.Record stats, int reached, boolean found) {
+		stats.closed = reached;
+		stats.pruned = statesPruned;
+		searchStats.end(stats, found);
+	}
+	
+	/**
+	 * Open list ordering for the A* search. When planning in actions (facing tracked) this is the
+	 * usual g + h; otherwise states are ordered by straight line distance to the goal alone.
+	 */
+	private static int priority(State s, State goal) {
+		if (s.facing == State.NO_FACING) {
+			return s.cost(goal);
+		}
+		return s.cost + s.estimate(goal.x, goal.y);
+	}
+	
 	static final int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
 
 	/**
@@ -573,6 +1026,47 @@ public class Agent {
 		return path;
 	}
 
+	/**
+	 * Rebuilds the path to a cell reached by a flood fill by following parent links back to its start.
+	 * 
+	 * @return - the path taken to reach the cell, a State per cell.
+	 */
+	private List<State> pathFind(FloodFill fill, int cell) {
+		LinkedList<State> path = new LinkedList<State>();
+		State next = null;
+		for (int c = cell; c != FloodFill.NONE; c = fill.parent(c)) {
+			State s = new State(w, inventory, w.indexX(c), w.indexY(c));
+			if (next != null) {
+				next.predecessor = s;
+			}
+			path.addFirst(s);
+			next = s;
+		}
+		return path;
+	}
+	
+	/**
+	 * Rebuilds the path to a node of a packed A* search by following parent links
+	 * back to the initial node.
+	 * 
+	 * @param nodes - node table of the search
+	 * @param destroyedSets - destroyed sets interned by the search
+	 * @param node - node reached at the end of the path
+	 * @return - the path taken to reach the node.
+	 */
+	private List<State> pathFind(StateTable nodes, Interner<CellSet> destroyedSets, int node) {
+		LinkedList<State> path = new LinkedList<State>();
+		for (int n = node; n != StateTable.NONE; n = nodes.parent(n)) {
+			long key = nodes.key(n);
+			State s = new State(w, PackedState.inventory(key), PackedState.x(key), PackedState.y(key));
+			s.destroyed = destroyedSets.get(nodes.set(n));
+			s.cost = nodes.g(n);
+			s.node = n;
+			path.addFirst(s);
+		}
+		return path;
+	}
+
 	/**
 	 * Get the score for a certain position
 	 * @return The score of the given position
@@ -583,7 +1077,7 @@ public class Agent {
 			// We have gold, add interest to returning to starting position.
 			return 100;
 		} else {
-			char atPosition = w.w[y][x];
+			char atPosition = w.cell(x, y);
 			switch (atPosition) {
 			case 'T':
 				// If we have a tree, it's more interesting if we have an axe.
@@ -647,79 +1141,9 @@ public class Agent {
 	 * @return
 	 */
 	public boolean hasNeighboursUnexplored(int x, int y) {
-		// check left, right, up then down (with array bound checking)
-		if ((x > 0 && w.w[y][x-1] == 'x') || (x < LOCAL_MAP_SIZE-1 && w.w[y][x+1] == 'x') || 
-				(y > 0 && w.w[y-1][x] == 'x') || (y < LOCAL_MAP_SIZE-1 && w.w[y+1][x] == 'x')) {
-			return true;
-		}
-		// slower check, within 2 cells of unexplored
-		for (int dx = -VIEW_HALF_SIZE; dx <= VIEW_HALF_SIZE; ++dx) {
-			if (w.w[y-VIEW_HALF_SIZE][x+dx] == 'x' || w.w[y+VIEW_HALF_SIZE][x+dx] == 'x') { // top and bottom
-				return true;
-			}
-		}
-		for (int dy = -VIEW_HALF_SIZE + 1; dy <= VIEW_HALF_SIZE - 1; ++dy) {
-			if (w.w[y+dy][x-VIEW_HALF_SIZE] == 'x' || w.w[y+dy][x+VIEW_HALF_SIZE] == 'x') { // left and right
-				return true;
-			}
-		}
-		
-		
-		return false;
+		return w.hasUnexploredNear(x, y);
 	}
 	
-	/**
-	 * Returns the minimum number of turns required to get from a position to another position
-	 * @param xStart Initial X
-	 * @param yStart Initial Y
-	 * @param direction Initial Direction
-	 * @param xGoal Goal X
-	 * @param yGoal Goal Y
-	 * @return Minimum steps to get to goal
-	 */
-	private int getTurningPenalty(int xStart, int yStart, int direction, int xGoal, int yGoal) {
-		int turns = 0;
-		switch (direction) {
-		case EAST:
-			if (xGoal >= xStart && yStart == yGoal) { // straight line
-				turns = 0;
-			} else if (xGoal >= xStart) { // must turn right or left
-				turns = 1;
-			} else { // must turn around
-				turns = 2;
-			}
-			break;
-		case NORTH:
-			if (xGoal == xStart && yGoal <= yStart) { // straight line
-				turns = 0;
-			} else if (yGoal <= yStart) { // must turn right or left
-				turns = 1;
-			} else { // must turn around
-				turns = 2;
-			}
-			break;
-		case WEST:
-			if (xGoal <= xStart && yStart == yGoal) { // straight line
-				turns = 0;
-			} else if (xGoal <= xStart) { // must turn right or left
-				turns = 1;
-			} else { // must turn around
-				turns = 2;
-			}
-			break;	
-		case SOUTH:
-			if (xGoal == xStart && yGoal >= yStart) { // straight line
-				turns = 0;
-			} else if (yGoal >= yStart) { // must turn right or left
-				turns = 1;
-			} else { // must turn around
-				turns = 2;
-			}
-			break;
-		}
-		return turns;
-	}
-
 	/**
 	 * Generates a new unpathed goal based on coordinates.
 	 * @param x - x coordinate of interesting point.
@@ -727,7 +1151,7 @@ public class Agent {
 	 * @return unpathed goal.
 	 */
 	private Goal createNewGoal(int x, int y) {
-		Goal unpathedGoal = new Goal(x, y, w.w[y][x], getScore(x, y));
+		Goal unpathedGoal = new Goal(x, y, w.cell(x, y), getScore(x, y));
 		
 		return unpathedGoal;
 	}
@@ -736,7 +1160,7 @@ public class Agent {
 		return (inventory.get('g') > 0 && posx == START_X && posy == START_Y);
 	}
 	public static void main(String[] args) {
-		Agent agent = new Agent();
+		final Agent agent = new Agent();
 		int port;
 
 		testAgent();
@@ -747,6 +1171,18 @@ public class Agent {
 		}
 
 		port = Integer.parseInt(args[1]);
+		
+		if (PRINT_SEARCH_STATS) {
+			// the game ends with the server closing the connection and us exiting, dump the stats then
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					System.err.print(agent.getSearchStats().summary());
+					System.err.println("  search branch limit reached " + State.branchLimitHits.get() + " times");
+					System.err.println("  searches skipped as cut off " + agent.getSearchesSkipped());
+				}
+			}));
+		}
 
 		// attach a view to the agent
 		IAgentView agentView = null;
@@ -877,6 +1313,452 @@ public class Agent {
 		assert (!s2.equals(s1));
 		assert (s1.hashCode() != s2.hashCode());
 		
+		// open list ordering and decrease-key
+		OpenList open = new OpenList();
+		State o1 = new State(null, new Inventory(), 1, 1);
+		State o2 = new State(null, new Inventory(), 2, 2);
+		State o3 = new State(null, new Inventory(), 3, 3);
+		o1.fcost = 5;
+		o2.fcost = 3;
+		o3.fcost = 7;
+		open.add(o1);
+		open.add(o2);
+		open.add(o3);
+		assert(open.contains(new State(null, new Inventory(), 3, 3)));
+		assert(open.get(new State(null, new Inventory(), 3, 3)) == o3);
+		o3.fcost = 1;
+		open.decreaseKey(o3);
+		assert(open.poll() == o3);
+		assert(open.poll() == o2);
+		assert(!open.contains(o2));
+		assert(open.poll() == o1);
+		assert(open.isEmpty());
+		
+		// packed state round trip
+		Inventory pi = new Inventory();
+		pi.add('a');
+		pi.add('d');
+		pi.add('d');
+		long packed = PackedState.pack(123, 45, SOUTH, pi);
+		assert(PackedState.x(packed) == 123);
+		assert(PackedState.y(packed) == 45);
+		assert(PackedState.facing(packed) == SOUTH);
+		assert(PackedState.items(packed, 'd') == 2);
+		assert(PackedState.inventory(packed).equals(pi));
+		// counts past what a field holds are clamped rather than fail, and still hold at least as much
+		Inventory lots = new Inventory();
+		for (int i = 0; i < 300; ++i) {
+			lots.add('a');
+			lots.add('d');
+		}
+		long saturated = PackedState.pack(123, 45, SOUTH, lots);
+		assert(PackedState.items(saturated, 'a') > 0 && PackedState.items(saturated, 'd') == 255);
+		assert(PackedState.holdsAtLeast(saturated, packed) && PackedState.x(saturated) == 123);
+		// and a count below none packs as none, leaving the other fields alone
+		Inventory overdrawn = new Inventory();
+		overdrawn.use('d');
+		overdrawn.add('k');
+		overdrawn.use('k');
+		overdrawn.use('k');
+		long negative = PackedState.pack(123, 45, SOUTH, overdrawn);
+		assert(PackedState.items(negative, 'k') == 0 && PackedState.items(negative, 'd') == 0 && PackedState.items(negative, 'g') == 0);
+		assert(negative == PackedState.pack(123, 45, SOUTH, new Inventory()));
+		
+		StateTable table = new StateTable(4);
+		for (int i = 0; i < 100; ++i) {
+			assert(table.add(PackedState.pack(i, i, 0, pi), i % 3, i, i - 1) == i);
+		}
+		assert(table.find(PackedState.pack(42, 42, 0, pi), 0) == 42);
+		assert(table.find(PackedState.pack(42, 42, 0, pi), 1) == StateTable.NONE);
+		assert(table.parent(42) == 41);
+		
+		// a closed state prunes states at its place holding no more items for no less cost, but not ones holding more
+		StateTable dt = new StateTable(4);
+		DominanceSet dominance = new DominanceSet(dt);
+		Inventory oneD = new Inventory();
+		oneD.add('d');
+		dominance.close(dt.add(PackedState.pack(5, 5, 0, oneD), 0, 10, StateTable.NONE));
+		assert(dominance.isDominated(PackedState.pack(5, 5, 0, new Inventory()), 0, 12));
+		Inventory twoD = new Inventory(oneD);
+		twoD.add('d');
+		assert(!dominance.isDominated(PackedState.pack(5, 5, 0, twoD), 0, 12));
+		assert(!dominance.isDominated(PackedState.pack(5, 5, 0, new Inventory()), 1, 12)); // other destroyed cells
+		assert(!dominance.isDominated(PackedState.pack(5, 5, 0, new Inventory()), 0, 8)); // cheaper
+		assert(!dominance.isDominated(PackedState.pack(5, 6, 0, new Inventory()), 0, 12)); // elsewhere
+		assert(dominance.getPruned() == 1);
+		
+		// persistent destroyed sets
+		CellSet c0 = CellSet.EMPTY;
+		CellSet c1 = c0.add(3, 4);
+		CellSet c2 = c1.add(3, 4);
+		assert(c1 == c2);
+		assert(c0.isEmpty() && !c0.contains(3, 4));
+		assert(c1.contains(3, 4) && !c1.contains(4, 3));
+		CellSet ca = c1, cb = c0;
+		for (int i = 0; i < 200; ++i) {
+			ca = ca.add(i, 2 * i);
+			cb = cb.add(199 - i, 2 * (199 - i));
+		}
+		cb = cb.add(3, 4);
+		assert(ca.size() == 201 && ca.equals(cb) && ca.hashCode() == cb.hashCode());
+		assert(!ca.equals(cb.add(1, 1)));
+		
+		// zobrist keys follow inventory changes, an item used up keys like one never held
+		Inventory z1 = new Inventory(), z2 = new Inventory();
+		z1.add('d');
+		assert(z1.zobrist() != z2.zobrist());
+		z1.use('d');
+		assert(z1.zobrist() == z2.zobrist() && z1.equals(z2) && z2.equals(z1));
+		State zs1 = new State(null, z1, 7, 7), zs2 = new State(null, z2, 7, 7);
+		zs1.breakCell(8, 7);
+		assert(zs1.key() != zs2.key() && !zs1.equals(zs2));
+		zs2.breakCell(8, 7);
+		assert(zs1.key() == zs2.key() && zs1.equals(zs2));
+		
+		// planning in actions: turn counts and the turn-aware heuristic
+		assert(State.turnsBetween(EAST, EAST) == 0);
+		assert(State.turnsBetween(EAST, NORTH) == 1);
+		assert(State.turnsBetween(SOUTH, EAST) == 1);
+		assert(State.turnsBetween(WEST, EAST) == 2);
+		State hs = new State(null, new Inventory(), 10, 10);
+		hs.facing = EAST;
+		assert(hs.estimate(15, 10) == 5);
+		assert(hs.estimate(5, 10) == 7);
+		assert(hs.estimate(15, 5) == 11);
+		assert(hs.estimate(5, 5) == 12);
+		hs.facing = NORTH;
+		assert(hs.estimate(15, 5) == 11);
+		assert(hs.estimate(10, 10) == 0);
+		
+		// jump point search walks around walls over floor only, and not through items
+		World jw = new World();
+		String [] room = {"*******", "*     *", "* *** *", "*   *d*", "*******"};
+		for (int y = 0; y < room.length; ++y) {
+			for (int x = 0; x < room[y].length(); ++x) {
+				jw.set(x, y, room[y].charAt(x));
+			}
+		}
+		JumpPointSearch jps = new JumpPointSearch(jw);
+		List<State> jp = jps.search(3, 3, 5, 1, WEST, new Inventory());
+		assert(jp != null && jp.size() == 9 && jp.get(0).x == 5 && jp.get(0).y == 1);
+		assert(jp.get(8).x == 3 && jp.get(8).y == 3);
+		assert(jps.search(5, 2, 1, 3, EAST, new Inventory()) != null);
+		jw.set(3, 1, 'd');
+		assert(jps.search(5, 2, 1, 3, EAST, new Inventory()) == null);
+		
+		// region planning: fetch the key, then go through the door
+		World rw = new World();
+		String [] rooms = {"*******", "* k*  *", "*  -  *", "*******"};
+		for (int y = 0; y < rooms.length; ++y) {
+			for (int x = 0; x < rooms[y].length(); ++x) {
+				rw.set(x, y, rooms[y].charAt(x));
+			}
+		}
+		rw.minx = rw.miny = 0;
+		rw.maxx = 6;
+		rw.maxy = 3;
+		List<State> rp = new RegionPlanner(rw).plan(5, 1, 1, 2, new Inventory());
+		assert(rp != null && rp.size() == 8);
+		assert(rp.get(0).x == 1 && rp.get(2).x == 2 && rp.get(2).y == 1 && rp.get(4).x == 3 && rp.get(7).x == 5);
+		
+		// the region planner takes only the key from a room, not the axe at the far end of it
+		World kw = new World();
+		String [] keyRoom = {"**********", "*a    k* *", "*      - *", "**********"};
+		for (int y = 0; y < keyRoom.length; ++y) {
+			for (int x = 0; x < keyRoom[y].length(); ++x) {
+				kw.set(x, y, keyRoom[y].charAt(x));
+			}
+		}
+		kw.minx = kw.miny = 0;
+		kw.maxx = 9;
+		kw.maxy = 3;
+		RegionPlanner kp = new RegionPlanner(kw);
+		List<State> kpath = kp.plan(8, 1, 5, 2, new Inventory());
+		assert(kpath != null && kpath.size() == 7 && kpath.get(2).x == 6 && kpath.get(2).y == 1);
+		for (State s : kpath) {
+			assert(s.x >= 5);
+		}
+		// and keeps its regions until a cell changes
+		int expanded = kp.getExpanded();
+		assert(kp.plan(8, 1, 5, 2, new Inventory()).size() == 7 && kp.getExpanded() == expanded);
+		kw.set(6, 1, ' ');
+		assert(kp.plan(8, 1, 5, 2, new Inventory()) == null);
+		
+		// unexplored counts follow the cells as they are set
+		World uw = new World();
+		assert(uw.unexploredInView(50, 50) == 25 && uw.hasUnexploredNear(50, 50));
+		for (int y = 48; y <= 52; ++y) {
+			for (int x = 48; x <= 52; ++x) {
+				uw.set(x, y, ' ');
+			}
+		}
+		assert(uw.unexploredInView(50, 50) == 0 && !uw.hasUnexploredNear(50, 50));
+		assert(uw.unexploredInView(51, 50) == 5 && uw.hasUnexploredNear(51, 50));
+		uw.set(51, 51, 'x');
+		assert(uw.unexploredInView(50, 50) == 1 && !uw.hasUnexploredNear(50, 50));
+		assert(uw.snapshot().unexploredInView(51, 50) == 6);
+
+		// the world grows in any direction, keeping what it had and its counts
+		int version = uw.getVersion();
+		uw.set(-300, -200, 'T');
+		assert(uw.getVersion() != version && uw.cell(-300, -200) == 'T' && uw.cell(50, 48) == ' ');
+		assert(uw.inBounds(-300, -200) && uw.indexX(uw.index(-300, -200)) == -300 && uw.indexY(uw.index(-300, -200)) == -200);
+		assert(uw.unexploredInView(50, 50) == 1 && uw.unexploredInView(-300, -201) == 24);
+		assert(uw.cell(-1000, 1000) == 'x' && uw.hasUnexploredNear(-1000, 1000));
+		// but only as far as packed plan States can tell cells apart
+		long far = PackedState.pack(-World.MAX_COORDINATE, World.MAX_COORDINATE, 0, new Inventory());
+		assert(PackedState.x(far) == -World.MAX_COORDINATE && PackedState.y(far) == World.MAX_COORDINATE);
+		boolean refused = false;
+		try {
+			uw.set(World.MAX_COORDINATE + 1, 0, ' ');
+		} catch (IllegalArgumentException e) {
+			refused = true;
+		}
+		assert(refused && uw.cell(World.MAX_COORDINATE + 1, 0) == 'x');
+
+		// snapshots share chunks until either side writes, and don't see each other's changes
+		World snap = uw.snapshot();
+		uw.set(50, 50, '*');
+		snap.set(52, 52, 'x');
+		assert(uw.cell(50, 50) == '*' && snap.cell(50, 50) == ' ' && uw.cell(52, 52) == ' ' && snap.cell(52, 52) == 'x');
+		assert(snap.unexploredInView(51, 51) == uw.unexploredInView(51, 51) + 1);
+		uw.set(50, 50, ' ');
+
+		// cells are stored as types, with what can be done with them in the flag tables
+		assert(uw.type(-300, -200) == World.TREE && uw.type(50, 48) == World.EMPTY && uw.type(0, 0) == World.UNEXPLORED);
+		assert(World.symbol(World.typeOf('k')) == 'k' && World.typeOf('@') == World.OTHER);
+		assert((World.FLAGS[World.typeOf('g')] & (World.WALKABLE | World.ITEM)) == (World.WALKABLE | World.ITEM));
+		assert((World.FLAGS[World.DOOR] & World.OPENABLE) != 0 && (World.FLAGS[World.WATER] & World.HAZARD) != 0);
+		State ts = new State(uw, new Inventory(), 0, 0);
+		assert(!ts.breakable('T') && !ts.breakable(World.WALL));
+		ts.inventory.add('d');
+		assert(ts.breakable('T') && ts.breakable(World.WALL) && !ts.breakable(World.WATER));
+
+		// walkable cells are kept in connected components, joined as the way is cleared
+		World cw = new World();
+		for (int x = 70; x <= 76; ++x) {
+			cw.set(x, 80, x == 73 ? '*' : ' ');
+		}
+		cw.set(71, 80, 'd');
+		assert(cw.connected(70, 80, 72, 80) && !cw.connected(70, 80, 74, 80) && cw.component(73, 80) == World.NO_COMPONENT);
+		assert(cw.toolsInComponent(72, 80) == 1 && cw.toolsInComponent(75, 80) == 0);
+		cw.set(73, 80, ' ');
+		assert(cw.connected(70, 80, 76, 80) && cw.toolsInComponent(76, 80) == 1);
+		cw.set(71, 80, ' ');
+		cw.set(72, 80, 'T');
+		assert(!cw.connected(70, 80, 76, 80) && cw.toolsInComponent(76, 80) == 0);
+
+		// the frontier field finds the way breadth-first search does, and follows changes to the map
+		Agent fa = new Agent();
+		for (int y = START_Y - 6; y <= START_Y + 6; ++y) {
+			for (int x = START_X - 6; x <= START_X + 6; ++x) {
+				fa.w.set(x, y, ' ');
+			}
+		}
+		fa.w.minx = fa.w.miny = START_X - 7;
+		fa.w.maxx = fa.w.maxy = START_X + 7;
+		FrontierField ff = new FrontierField(fa.w, fa.inventory);
+		List<State> fp = ff.nearest(START_X, START_Y, fa.inventory);
+		assert(fp.size() == 6 && fp.get(5).x == START_X + 5 && fp.get(5).y == START_Y);
+		assert(fp.size() == fa.exploreBFS().getPath().size());
+		fa.w.set(START_X + 1, START_Y, '*');
+		fa.w.publish();
+		assert(fa.w.getChanges().getX(fa.w.getChanges().size() - 1) == START_X + 1 && fa.w.getChanges().getTo(fa.w.getChanges().size() - 1) == World.WALL);
+		ff.update(fa.w.getChanges(), fa.inventory);
+		fp = ff.nearest(START_X, START_Y, fa.inventory);
+		Goal fg = fa.exploreBFS();
+		assert(fp.size() == 6 && fp.get(5).x == fg.x && fp.get(5).y == fg.y);
+		rw.set(2, 1, ' ');
+		assert(new RegionPlanner(rw).plan(5, 1, 1, 2, new Inventory()) == null);
+
+		// the flood fill forgets a search by starting a new generation, and a search can queue every cell
+		FloodFill fill = new FloodFill(4);
+		fill.start();
+		assert(fill.visit(0, FloodFill.NONE) && fill.visit(1, 0) && !fill.visit(0, 1));
+		assert(fill.poll() == 0 && fill.poll() == 1 && fill.isEmpty());
+		fill.start();
+		assert(!fill.isVisited(0) && !fill.isVisited(1));
+		assert(fill.visit(3, FloodFill.NONE) && fill.poll() == 3 && fill.visit(2, 3) && fill.visit(1, 3));
+		assert(fill.poll() == 2 && fill.visit(0, 2) && !fill.visit(3, 2) && fill.poll() == 1 && fill.poll() == 0 && fill.isEmpty());
+		assert(fill.depth(0) == 2 && fill.parent(0) == 2 && fill.parent(3) == FloodFill.NONE);
+
+		// exploring by gain goes further down the corridor for a view of more unexplored cells
+		Agent ga = new Agent();
+		for (int y = START_Y - 12; y <= START_Y + 12; ++y) {
+			for (int x = START_X - 12; x <= START_X + 12; ++x) {
+				boolean pocket = x == START_X + 1 && y == START_Y - 1; // one unexplored cell next to the start
+				boolean block = x >= START_X + 7 && x <= START_X + 8 && Math.abs(y - START_Y) <= 2; // many past the end
+				if (!pocket && !block) {
+					ga.w.set(x, y, y == START_Y && x >= START_X && x <= START_X + 6 ? ' ' : '*');
+				}
+			}
+		}
+		ga.w.minx = ga.w.miny = START_X - 12;
+		ga.w.maxx = ga.w.maxy = START_X + 12;
+		Goal nearest = ga.exploreBFS();
+		assert(nearest.x == START_X + 1 && nearest.y == START_Y);
+		Goal richest = ga.exploreByGain();
+		assert(richest.x == START_X + 6 && richest.y == START_Y && richest.getPath().size() == 7);
 		
+		// bidirectional search goes through the door only if we hold a key, and never blasts
+		Inventory withKey = new Inventory();
+		withKey.add('k');
+		List<State> bp = new BidirectionalSearch(rw).search(5, 1, 1, 2, EAST, withKey);
+		assert(bp != null && bp.size() == 6 && bp.get(2).x == 3 && bp.get(2).y == 2);
+		Inventory withDynamite = new Inventory();
+		withDynamite.add('d');
+		assert(new BidirectionalSearch(rw).search(5, 1, 1, 2, EAST, withDynamite) == null);
+		BidirectionalSearch door = new BidirectionalSearch(rw);
+		assert(door.search(3, 2, 1, 2, EAST, new Inventory()) == null);
+		assert(door.search(3, 2, 1, 2, EAST, withKey) != null);
+		assert(door.search(3, 2, 1, 2, EAST, new Inventory()) == null);
+
+		// D* Lite repairs its search to the path a fresh planner finds, after a wall appears and after getting an axe
+		World dw = new World();
+		String [] lanes = {"*********", "*   T   *", "* ***** *", "*       *", "* ***** *", "*       *", "*********"};
+		for (int y = 0; y < lanes.length; ++y) {
+			for (int x = 0; x < lanes[y].length(); ++x) {
+				dw.set(x, y, lanes[y].charAt(x));
+			}
+		}
+		dw.minx = dw.miny = 0;
+		dw.maxx = 8;
+		dw.maxy = 6;
+		dw.publish();
+		DStarLite dsl = new DStarLite(dw, new Inventory());
+		dsl.moveTo(1, 1, EAST);
+		dsl.addGoal(7, 1);
+		List<State> dp = dsl.getPath(new Inventory());
+		assert(dp != null && dp.size() == 11 && dp.get(7).y == 3);
+		dw.set(4, 3, '*');
+		dw.publish();
+		dsl.refresh(dw.getChanges());
+		dp = dsl.getPath(new Inventory());
+		DStarLite fresh = new DStarLite(dw, new Inventory());
+		fresh.moveTo(1, 1, EAST);
+		fresh.addGoal(7, 1);
+		List<State> fresh1 = fresh.getPath(new Inventory());
+		assert(dp != null && fresh1 != null && dp.size() == 15 && dp.size() == fresh1.size());
+		for (int i = 0; i < dp.size(); ++i) {
+			assert(dp.get(i).x == fresh1.get(i).x && dp.get(i).y == fresh1.get(i).y);
+		}
+		Inventory withAxe = new Inventory();
+		withAxe.add('a');
+		dsl.setInventory(withAxe);
+		dp = dsl.getPath(withAxe);
+		fresh = new DStarLite(dw, withAxe);
+		fresh.moveTo(1, 1, EAST);
+		fresh.addGoal(7, 1);
+		fresh1 = fresh.getPath(withAxe);
+		assert(dp != null && fresh1 != null && dp.size() == 7 && dp.size() == fresh1.size());
+		for (int i = 0; i < dp.size(); ++i) {
+			assert(dp.get(i).x == fresh1.get(i).x && dp.get(i).y == fresh1.get(i).y && dp.get(i).y == 1);
+		}
+
+		// a followed path goes stale once a cell on it becomes a wall
+		Goal vg = new Goal(7, 1, ' ', 0);
+		vg.setPath(fresh1);
+		assert(vg.isValid(dw, withAxe, 1, 1) && !vg.isValid(dw, new Inventory(), 1, 1));
+		dw.set(5, 1, '*');
+		assert(!vg.isValid(dw, withAxe, 1, 1));
+
+		// plan search on a map where the way is through a tree, with the axe behind us
+		Agent pa = new Agent();
+		String [] axeRoom = {"********", "*a  *  *", "*   T  *", "********"};
+		for (int y = 0; y < axeRoom.length; ++y) {
+			for (int x = 0; x < axeRoom[y].length(); ++x) {
+				pa.w.set(START_X + x, START_Y + y, axeRoom[y].charAt(x));
+			}
+		}
+		pa.w.minx = START_X;
+		pa.w.miny = START_Y;
+		pa.w.maxx = START_X + 7;
+		pa.w.maxy = START_Y + 3;
+		int pgx = START_X + 6, pgy = START_Y + 1, psx = START_X + 3, psy = START_Y + 2;
+		List<State> optimal = pa.searchAStar(pgx, pgy, psx, psy, true, MAX_OPTIMAL_PLAN_NODES);
+		assert(optimal != null && optimal.get(optimal.size() - 1).x == pgx);
+		int optimalCost = optimal.get(optimal.size() - 1).cost;
+
+		// anytime A* ends on the cheapest plan given the time, and returns nothing once past its deadline
+		AnytimeAStar ara = new AnytimeAStar(pa.w, PLAN_START_WEIGHT, PLAN_WEIGHT_STEP);
+		State pinit = new State(pa.w, pa.inventory, psx, psy);
+		pinit.facing = pa.direction;
+		List<State> ap = ara.search(pinit, pgx, pgy, Long.MAX_VALUE, MAX_OPTIMAL_PLAN_NODES);
+		assert(ap != null && ap.get(ap.size() - 1).cost == optimalCost && ara.getWeight() == 1 && !ara.isOutOfTime());
+		pinit = new State(pa.w, pa.inventory, psx, psy);
+		pinit.facing = pa.direction;
+		assert(ara.search(pinit, pgx, pgy, System.nanoTime() - 1, MAX_OPTIMAL_PLAN_NODES) == null && ara.isOutOfTime());
+		// and the quick search it falls back on finds a plan in the same turn, however long it takes
+		List<State> quick = pa.searchAStar(pgx, pgy, psx, psy, false, MAX_PLAN_NODES);
+		assert(quick != null && !pa.searchCutOff && quick.get(quick.size() - 1).x == pgx && quick.get(quick.size() - 1).y == pgy);
+
+		// IDA* (unweighted) finds the cheapest plan where the heuristic is exact, and one within the quarter
+		// its bound grows by otherwise; it gives up at its expansion limit
+		State finit = new State(fa.w, fa.inventory, START_X, START_Y - 2);
+		finit.facing = EAST;
+		IDAStar ida = new IDAStar(1, 10, MAX_IDA_EXPANSIONS);
+		List<State> ip = ida.search(finit, START_X + 4, START_Y - 5, Long.MAX_VALUE);
+		fa.direction = EAST;
+		List<State> fopt = fa.searchAStar(START_X + 4, START_Y - 5, START_X, START_Y - 2, true, MAX_OPTIMAL_PLAN_NODES);
+		assert(ip != null && !ida.isCutOff() && ip.get(ip.size() - 1).cost == fopt.get(fopt.size() - 1).cost);
+		pinit = new State(pa.w, pa.inventory, psx, psy);
+		pinit.facing = pa.direction;
+		ip = ida.search(pinit, pgx, pgy, Long.MAX_VALUE);
+		assert(ip != null && ip.get(ip.size() - 1).cost >= optimalCost && ip.get(ip.size() - 1).cost <= optimalCost * 5 / 4);
+		pinit = new State(pa.w, pa.inventory, psx, psy);
+		pinit.facing = pa.direction;
+		ida = new IDAStar(1, 10, 5);
+		assert(ida.search(pinit, pgx, pgy, Long.MAX_VALUE) == null && ida.isCutOff());
+		// and walks a long plan without recursing, even on a thread with a small stack
+		final World lw = new World();
+		for (int x = 0; x <= 3001; ++x) {
+			lw.set(x, 0, '*');
+			lw.set(x, 1, x == 0 || x == 3001 ? '*' : ' ');
+			lw.set(x, 2, '*');
+		}
+		lw.minx = lw.miny = 0;
+		lw.maxx = 3001;
+		lw.maxy = 2;
+		final List<List<State>> deep = new LinkedList<List<State>>();
+		Thread small = new Thread(null, new Runnable() {
+			@Override
+			public void run() {
+				State linit = new State(lw, new Inventory(), 1, 1);
+				linit.facing = EAST;
+				deep.add(new IDAStar(1, 10, MAX_IDA_EXPANSIONS).search(linit, 3000, 1, Long.MAX_VALUE));
+			}
+		}, "deep IDA*", 64 * 1024);
+		small.start();
+		try {
+			small.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		assert(deep.size() == 1 && deep.get(0) != null && deep.get(0).size() == 3000);
+
+		// parallel A* finds a plan as cheap as the serial search's
+		ParallelAStar hda = new ParallelAStar(3);
+		pinit = new State(pa.w, pa.inventory, psx, psy);
+		pinit.facing = pa.direction;
+		List<State> hp = hda.search(pinit, pgx, pgy, MAX_OPTIMAL_PLAN_NODES);
+		assert(hp != null && !hda.isCutOff() && hp.get(hp.size() - 1).cost == optimalCost);
+		hda.shutdown();
+
+		// the portfolio races its strategies for a plan and counts which of them won
+		PortfolioPlanner portfolio = new PortfolioPlanner(PortfolioPlanner.defaultStrategies(PLAN_START_WEIGHT, PLAN_WEIGHT_STEP, MAX_OPTIMAL_PLAN_NODES));
+		List<State> pp = portfolio.plan(pa.w, pa.inventory, pgx, pgy, psx, psy, pa.direction, 0, System.nanoTime() + 10000000000L);
+		assert(pp != null && pp.get(0).x == psx && pp.get(pp.size() - 1).x == pgx && pp.get(pp.size() - 1).y == pgy);
+		String portfolioStats = portfolio.getStatistics();
+		assert(portfolioStats.contains("jump points: 0/1 wins") && portfolioStats.contains("bidirectional: 0/1 wins"));
+		assert(portfolioStats.contains("anytime A*: 1/1 wins") != portfolioStats.contains("greedy: 1/1 wins"));
+		assert(portfolio.plan(pa.w, pa.inventory, pgx, pgy, psx, psy, pa.direction, 0, System.nanoTime() - 1) == null);
+		portfolio.shutdown();
+		// its strategies keep to the deadline, and start from the moves made so far
+		JumpPointSearch fjps = new JumpPointSearch(fa.w);
+		assert(fjps.search(START_X + 4, START_Y - 5, START_X, START_Y - 2, EAST, new Inventory()) != null);
+		assert(fjps.search(START_X + 4, START_Y - 5, START_X, START_Y - 2, EAST, new Inventory(), System.nanoTime() - 1) == null);
+		assert(new BidirectionalSearch(rw).search(5, 1, 1, 2, EAST, withKey, System.nanoTime() - 1) == null);
+		assert(PortfolioPlanner.greedy(pa.w, pa.inventory, pgx, pgy, psx, psy, EAST, 0, Long.MAX_VALUE) != null);
+		assert(PortfolioPlanner.greedy(pa.w, pa.inventory, pgx, pgy, psx, psy, EAST, MAX_MOVES, Long.MAX_VALUE) == null);
 	}
 }
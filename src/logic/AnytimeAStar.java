@@ -0,0 +1,220 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import model.CellSet;
+import model.PackedState;
+import model.State;
+import model.World;
+
+/**
+ * Anytime (ARA*) version of the A* planner, for when a plan has to be ready within a time budget.
+ *
+ * The first pass orders the open list on g + w * h with an inflated weight w, which heads for the
+ * goal and finds a plan (costing at most w times the cheapest) after far fewer expansions. While
+ * time remains the weight is lowered and the search carries on from where it was: states whose
+ * cost improved after they were expanded in the current pass are kept aside and only requeued for
+ * the next pass, so no pass repeats work the previous one did. A pass with weight 1 that completes
+ * proves the plan is the cheapest. When the deadline is hit the best plan found so far is returned.
+ *
+ * States, step costs and dominance pruning are the same as the A* planner's when planning in actions.
+ */
+public class AnytimeAStar {
+
+	private World w;
+	private double startWeight;
+	private double weightStep;
+
+	private StateTable nodes;
+	private Interner<CellSet> destroyedSets;
+	private DominanceSet closed;
+	private int [] closedInPass; // pass in which each node was last expanded
+	private int pass;
+
+	private double weight; // weight of the last pass that completed, 0 if none did
+	private boolean outOfTime; // whether the last search stopped at its deadline or node limit
+	private int expanded; // states expanded by the last search, over all its passes
+	private int peakOpen; // most states queued at once in the last search
+
+	public AnytimeAStar(World w, double startWeight, double weightStep) {
+		this.w = w;
+		this.startWeight = startWeight;
+		this.weightStep = weightStep;
+	}
+
+	/**
+	 * Returns the weight of the last pass the last search completed (1 for a proven cheapest plan),
+	 * or 0 if it didn't complete any.
+	 */
+	public double getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Returns whether the last search was stopped by its deadline or node limit,
+	 * rather than finishing its last pass.
+	 */
+	public boolean isOutOfTime() {
+		return outOfTime;
+	}
+
+	/**
+	 * Returns how many states the last search expanded, over all its passes.
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * Returns the most states the last search had queued at once.
+	 */
+	public int getPeakOpen() {
+		return peakOpen;
+	}
+
+	/**
+	 * Returns how many states the last search reached.
+	 */
+	public int getReached() {
+		return nodes == null ? 0 : nodes.size();
+	}
+
+	/**
+	 * Returns how many states the last search found to be dominated.
+	 */
+	public int getPruned() {
+		return closed == null ? 0 : closed.getPruned();
+	}
+
+	/**
+	 * Searches from the initial State (facing tracked) to the goal cell.
+	 *
+	 * @param deadline - System.nanoTime() by which to return (it also returns early if the thread is interrupted)
+	 * @param maxNodes - stop once this many states have been reached
+	 * @return - the best path found, or null if none was found in time (see isOutOfTime) or there is none
+	 */
+	public List<State> search(State initial, int goalX, int goalY, long deadline, int maxNodes) {
+		nodes = new StateTable();
+		destroyedSets = new Interner<CellSet>();
+		closed = new DominanceSet(nodes);
+		closedInPass = new int[1024];
+		weight = 0;
+		outOfTime = false;
+		expanded = 0;
+		peakOpen = 0;
+
+		OpenList open = new OpenList();
+		List<State> incons = new ArrayList<State>();
+		int bestGoal = StateTable.NONE;
+		int bestCost = Integer.MAX_VALUE;
+
+		initial.cost = 0;
+		initial.node = nodes.add(PackedState.pack(initial), destroyedSets.intern(initial.destroyed), 0, StateTable.NONE);
+		open.add(initial);
+
+		for (double passWeight = startWeight; ; passWeight = Math.max(1, passWeight - weightStep)) {
+			pass++;
+			// requeue everything under the new weight
+			List<State> queued = new ArrayList<State>(incons);
+			while (!open.isEmpty()) {
+				queued.add(open.poll());
+			}
+			incons.clear();
+			for (State s : queued) {
+				if (s.cost == nodes.g(s.node) && !open.contains(s)) {
+					s.fcost = priority(s, goalX, goalY, passWeight);
+					open.add(s);
+				}
+			}
+
+			while (!open.isEmpty() && open.peek().fcost < bestCost) {
+				if (System.nanoTime() > deadline || nodes.size() > maxNodes || Thread.currentThread().isInterrupted()) {
+					outOfTime = true;
+					return bestGoal == StateTable.NONE ? null : pathFind(bestGoal);
+				}
+				peakOpen = Math.max(peakOpen, open.size());
+				State current = open.poll();
+				expanded++;
+				markClosed(current.node);
+				closed.close(current.node);
+
+				for (State neighbour : current.getNeighbours(true)) {
+					long key = PackedState.pack(neighbour);
+					int set = destroyedSets.intern(neighbour.destroyed);
+					int node = nodes.find(key, set);
+					int potentialCost = current.cost + neighbour.stepCost(current);
+					if (node == StateTable.NONE) {
+						if (closed.isDominated(key, set, potentialCost)) {
+							continue;
+						}
+						node = nodes.add(key, set, potentialCost, current.node);
+					} else if (potentialCost < nodes.g(node)) {
+						nodes.relax(node, potentialCost, current.node);
+					} else {
+						continue;
+					}
+					neighbour.node = node;
+					neighbour.cost = potentialCost;
+					if (neighbour.x == goalX && neighbour.y == goalY) {
+						if (potentialCost < bestCost) {
+							bestCost = potentialCost;
+							bestGoal = node;
+						}
+						continue; // nothing to expand past the goal
+					}
+					if (isClosed(node)) {
+						incons.add(neighbour); // expanded this pass already, look again next pass
+						continue;
+					}
+					State inOpen = open.get(neighbour);
+					if (inOpen == null) {
+						neighbour.fcost = priority(neighbour, goalX, goalY, passWeight);
+						open.add(neighbour);
+					} else {
+						inOpen.move = neighbour.move;
+						inOpen.cost = potentialCost;
+						inOpen.fcost = priority(inOpen, goalX, goalY, passWeight);
+						open.decreaseKey(inOpen);
+					}
+				}
+			}
+			weight = passWeight;
+			if (passWeight == 1 || bestGoal == StateTable.NONE) {
+				// proven cheapest, or there is no plan at all
+				return bestGoal == StateTable.NONE ? null : pathFind(bestGoal);
+			}
+		}
+	}
+
+	private static int priority(State s, int goalX, int goalY, double weight) {
+		return s.cost + (int) (weight * s.estimate(goalX, goalY));
+	}
+
+	private void markClosed(int node) {
+		if (node >= closedInPass.length) {
+			int [] bigger = new int[Math.max(closedInPass.length * 2, node + 1)];
+			System.arraycopy(closedInPass, 0, bigger, 0, closedInPass.length);
+			closedInPass = bigger;
+		}
+		closedInPass[node] = pass;
+	}
+
+	private boolean isClosed(int node) {
+		return node < closedInPass.length && closedInPass[node] == pass;
+	}
+
+	private List<State> pathFind(int node) {
+		LinkedList<State> path = new LinkedList<State>();
+		for (int n = node; n != StateTable.NONE; n = nodes.parent(n)) {
+			long key = nodes.key(n);
+			State s = new State(w, PackedState.inventory(key), PackedState.x(key), PackedState.y(key));
+			s.destroyed = destroyedSets.get(nodes.set(n));
+			s.cost = nodes.g(n);
+			s.node = n;
+			path.addFirst(s);
+		}
+		return path;
+	}
+}
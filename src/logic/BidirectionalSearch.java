@@ -0,0 +1,231 @@
+package logic;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import model.Inventory;
+import model.State;
+import model.World;
+
+/**
+ * Bidirectional Dijkstra search between two known cells for movement that uses nothing up.
+ *
+ * One search grows forwards from the agent and one backwards from the goal, always expanding the
+ * side with the smaller frontier, until the cheapest path through a state both have reached can no
+ * longer be beaten (the sum of the two smallest queued costs is no less than it). Each search only
+ * has to cover about half the distance, so on long open trips the two frontiers together are much
+ * smaller than the one a single search would grow.
+ *
+ * States and step costs are the same as the A* planner's when planning in actions: (cell, facing),
+ * turns plus a forward move, plus a chop or open for a tree or door. Floor and items can be walked,
+ * trees only with an axe and doors only with a key. Nothing is ever blasted, so the path holds
+ * whatever we have.
+ */
+public class BidirectionalSearch {
+
+	static final int INF = 1 << 29;
+
+	private static final int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
+
+	private World w;
+
+	// state number is cell index * 4 + facing; forward search arrives facing that way, backward search leaves from it
+	private int [] gForward, gBackward;
+	private int [] parent; // state the forward search came from
+	private int [] child; // state the backward search came from
+	private int [] stampForward, stampBackward; // search the entries belong to
+	private int search;
+	private IntHeap forward, backward;
+
+	private boolean hasAxe, hasKey;
+	private int expanded; // states expanded by the last search, both directions
+	private int peakOpen; // most states queued at once in the last search, both directions
+	private int version; // world version the tables are sized for
+
+	public BidirectionalSearch(World w) {
+		this.w = w;
+		allocate();
+	}
+
+	// sizes the tables for the world's cells, again whenever the world grows
+	private void allocate() {
+		int states = w.cellCount() * 4;
+		gForward = new int[states];
+		gBackward = new int[states];
+		parent = new int[states];
+		child = new int[states];
+		stampForward = new int[states];
+		stampBackward = new int[states];
+		search = 0;
+		forward = new IntHeap(states);
+		backward = new IntHeap(states);
+		version = w.getVersion();
+	}
+
+	/**
+	 * Returns how many states the last search expanded, counting both directions.
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * Returns the most states the last search had queued at once, counting both directions.
+	 */
+	public int getPeakOpen() {
+		return peakOpen;
+	}
+
+	/**
+	 * Searches with no deadline.
+	 */
+	public List<State> search(int goalX, int goalY, int startX, int startY, int facing, Inventory inventory) {
+		return search(goalX, goalY, startX, startY, facing, inventory, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the cheapest path from the given cell and facing to the goal cell that uses nothing up.
+	 *
+	 * @param inventory - what we hold (only whether there is an axe or key matters)
+	 * @param deadline - System.nanoTime() by which to give up (it also gives up if the thread is interrupted)
+	 * @return - every cell of the path, starting with our own, or null if there isn't one
+	 *           (or we gave up)
+	 */
+	public List<State> search(int goalX, int goalY, int startX, int startY, int facing, Inventory inventory, long deadline) {
+		hasAxe = inventory.get('a') > 0;
+		hasKey = inventory.get('k') > 0;
+		if (!w.inBounds(goalX, goalY) || !w.inBounds(startX, startY) || enterCost(w.type(goalX, goalY)) < 0) {
+			return null;
+		}
+		if (version != w.getVersion()) {
+			allocate();
+		}
+		search++;
+		forward.clear();
+		backward.clear();
+		expanded = 0;
+		peakOpen = 0;
+
+		int start = state(startX, startY, facing);
+		reachForward(start, 0, -1);
+		for (int f = 0; f < 4; ++f) {
+			reachBackward(state(goalX, goalY, f), 0, -1);
+		}
+		int best = INF, meet = -1;
+		if (startX == goalX && startY == goalY) {
+			best = 0;
+			meet = start;
+		}
+
+		while (!forward.isEmpty() && !backward.isEmpty()
+				&& gForward[forward.peek()] + gBackward[backward.peek()] < best) {
+			if (System.nanoTime() > deadline || Thread.currentThread().isInterrupted()) {
+				return null;
+			}
+			expanded++;
+			peakOpen = Math.max(peakOpen, forward.size() + backward.size());
+			if (forward.size() <= backward.size()) {
+				int s = forward.poll();
+				int cell = s >> 2;
+				int x = w.indexX(cell);
+				int y = w.indexY(cell);
+				for (int d = 0; d < 4; ++d) {
+					int cost = stepCost(s & 3, d, x + moveVectors[d][0], y + moveVectors[d][1]);
+					if (cost >= INF) {
+						continue;
+					}
+					int next = state(x + moveVectors[d][0], y + moveVectors[d][1], d);
+					int g = gForward[s] + cost;
+					if (stampForward[next] != search || g < gForward[next]) {
+						reachForward(next, g, s);
+						if (stampBackward[next] == search && g + gBackward[next] < best) {
+							best = g + gBackward[next];
+							meet = next;
+						}
+					}
+				}
+			} else {
+				int s = backward.poll();
+				int cell = s >> 2;
+				int dir = s & 3;
+				// predecessors: any facing on the cell behind, turning to this facing and stepping in
+				int px = w.indexX(cell) - moveVectors[dir][0];
+				int py = w.indexY(cell) - moveVectors[dir][1];
+				if (!w.inBounds(px, py) || enterCost(w.type(px, py)) < 0) {
+					continue;
+				}
+				for (int f = 0; f < 4; ++f) {
+					int cost = stepCost(f, dir, w.indexX(cell), w.indexY(cell));
+					if (cost >= INF) {
+						continue;
+					}
+					int prev = state(px, py, f);
+					int g = gBackward[s] + cost;
+					if (stampBackward[prev] != search || g < gBackward[prev]) {
+						reachBackward(prev, g, s);
+						if (stampForward[prev] == search && g + gForward[prev] < best) {
+							best = g + gForward[prev];
+							meet = prev;
+						}
+					}
+				}
+			}
+		}
+		if (meet < 0) {
+			return null;
+		}
+		return path(meet, inventory);
+	}
+
+	private void reachForward(int s, int g, int from) {
+		stampForward[s] = search;
+		gForward[s] = g;
+		parent[s] = from;
+		forward.put(s, g);
+	}
+
+	private void reachBackward(int s, int g, int from) {
+		stampBackward[s] = search;
+		gBackward[s] = g;
+		child[s] = from;
+		backward.put(s, g);
+	}
+
+	private int stepCost(int facing, int dir, int nx, int ny) {
+		if (!w.inBounds(nx, ny)) {
+			return INF;
+		}
+		int enter = enterCost(w.type(nx, ny));
+		if (enter < 0) {
+			return INF;
+		}
+		return State.turnsBetween(facing, dir) + 1 + enter;
+	}
+
+	// extra actions needed before stepping into a cell, or -1 if we can't without using something up
+	private int enterCost(byte type) {
+		int flags = World.FLAGS[type];
+		if ((flags & World.WALKABLE) != 0) {
+			return 0;
+		}
+		if (((flags & World.CHOPPABLE) != 0 && hasAxe) || ((flags & World.OPENABLE) != 0 && hasKey)) {
+			return 1;
+		}
+		return -1;
+	}
+
+	private List<State> path(int meet, Inventory inventory) {
+		LinkedList<State> path = new LinkedList<State>();
+		for (int s = meet; s >= 0; s = parent[s]) {
+			path.addFirst(new State(w, inventory, w.indexX(s >> 2), w.indexY(s >> 2)));
+		}
+		for (int s = child[meet]; s >= 0; s = child[s]) {
+			path.add(new State(w, inventory, w.indexX(s >> 2), w.indexY(s >> 2)));
+		}
+		return path;
+	}
+
+	private int state(int x, int y, int facing) {
+		return w.index(x, y) * 4 + facing;
+	}
+}
@@ -0,0 +1,333 @@
+package logic;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import model.Inventory;
+import model.State;
+import model.World;
+import model.WorldChanges;
+
+/**
+ * Incremental planner (D* Lite) over the known map for movement that uses up no items.
+ *
+ * The search runs backwards from the goal cell(s) and is kept between calls: when the agent moves,
+ * or cells change (newly seen, chopped, blasted, items picked up), only the part of the search that
+ * depended on them is repaired, so replanning the same leg turn after turn costs a small fraction of
+ * a fresh search. Like the A* planner when planning in actions, search states are (cell, facing) and
+ * a step costs the turns to face the next cell, a chop/open if there is a tree/door in it, and the
+ * forward move. Trees and doors are only passable with an axe/key, dynamite is never used.
+ */
+public class DStarLite {
+
+	static final int INF = 1 << 29;
+
+	private static final int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
+
+	private World w;
+
+	// search state number is cell index * 4 + facing
+	private int [] g;
+	private int [] rhs;
+	private IntHeap open;
+
+	private boolean [] goal; // by cell
+	private byte [] known; // type of each cell when its costs were last computed
+
+	private boolean hasAxe, hasKey;
+
+	private int startX, startY, startFacing;
+	private int lastX, lastY; // where the agent was when the key modifier last changed
+	private int km; // key modifier, accumulated heuristic drift from the agent moving
+	private boolean placed; // whether moveTo has been called yet
+
+	private int expanded; // states expanded by the last getPath
+	private int peakOpen; // most states queued at once during the last getPath
+	private int version; // world version the tables are numbered for
+
+	public DStarLite(World w, Inventory inventory) {
+		this.w = w;
+		int cells = w.cellCount();
+		g = new int[cells * 4];
+		rhs = new int[cells * 4];
+		open = new IntHeap(cells * 4);
+		goal = new boolean[cells];
+		known = new byte[cells];
+		for (int i = 0; i < cells; ++i) {
+			known[i] = w.type(w.indexX(i), w.indexY(i));
+		}
+		for (int s = 0; s < g.length; ++s) {
+			g[s] = INF;
+			rhs[s] = INF;
+		}
+		hasAxe = inventory.get('a') > 0;
+		hasKey = inventory.get('k') > 0;
+		km = 0;
+		placed = false;
+		version = w.getVersion();
+	}
+
+	/**
+	 * Returns whether the world has grown since the planner was made, renumbering the cells its
+	 * tables are indexed by. A stale planner can't be used any more; make a new one.
+	 */
+	public boolean isStale() {
+		return version != w.getVersion();
+	}
+
+	/**
+	 * Adds a cell the planner should find a way to.
+	 */
+	public void addGoal(int x, int y) {
+		int cell = w.index(x, y);
+		if (goal[cell]) {
+			return;
+		}
+		goal[cell] = true;
+		for (int f = 0; f < 4; ++f) {
+			updateVertex(cell * 4 + f);
+		}
+	}
+
+	/**
+	 * Removes a cell added with addGoal.
+	 */
+	public void removeGoal(int x, int y) {
+		int cell = w.index(x, y);
+		if (!goal[cell]) {
+			return;
+		}
+		goal[cell] = false;
+		for (int f = 0; f < 4; ++f) {
+			updateVertex(cell * 4 + f);
+		}
+	}
+
+	/**
+	 * Tells the planner what we are carrying. Picking up the first axe or key changes the cost
+	 * of every tree or door, so those cells are all updated.
+	 */
+	public void setInventory(Inventory inventory) {
+		boolean axe = inventory.get('a') > 0;
+		boolean key = inventory.get('k') > 0;
+		if (axe == hasAxe && key == hasKey) {
+			return;
+		}
+		hasAxe = axe;
+		hasKey = key;
+		for (int y = w.miny; y <= w.maxy; ++y) {
+			for (int x = w.minx; x <= w.maxx; ++x) {
+				if ((World.FLAGS[known[w.index(x, y)]] & (World.CHOPPABLE | World.OPENABLE)) != 0) {
+					cellChanged(x, y);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Picks up the changes the world last published (what the last view revealed or the last action changed).
+	 */
+	public void refresh(WorldChanges changes) {
+		for (int i = 0; i < changes.size(); ++i) {
+			int x = changes.getX(i), y = changes.getY(i);
+			int cell = w.index(x, y);
+			byte t = w.type(x, y);
+			if (t != known[cell]) {
+				int oldCost = enterCost(known[cell]);
+				known[cell] = t;
+				if (enterCost(t) != oldCost) {
+					cellChanged(x, y);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the agent (the search start) to the given cell and facing.
+	 * Call this before adding goals or reporting changes, so they are keyed against where the agent is.
+	 */
+	public void moveTo(int x, int y, int facing) {
+		if (!placed) {
+			placed = true;
+			lastX = x;
+			lastY = y;
+		} else if (x != lastX || y != lastY) {
+			km += Math.abs(x - lastX) + Math.abs(y - lastY);
+			lastX = x;
+			lastY = y;
+		}
+		startX = x;
+		startY = y;
+		startFacing = facing;
+	}
+
+	/**
+	 * Returns how many states the last getPath expanded repairing the search.
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * Returns the most states queued at once during the last getPath.
+	 */
+	public int getPeakOpen() {
+		return peakOpen;
+	}
+
+	/**
+	 * Returns the cheapest path from the agent to a goal cell, starting with the agent's
+	 * own cell, or null if every way there needs dynamite (or there is none).
+	 */
+	public List<State> getPath(Inventory inventory) {
+		computeShortestPath();
+		int s = state(startX, startY, startFacing);
+		if (g[s] >= INF) {
+			return null;
+		}
+		LinkedList<State> path = new LinkedList<State>();
+		int x = startX, y = startY, facing = startFacing;
+		path.add(new State(w, inventory, x, y));
+		for (int steps = 0; !goal[w.index(x, y)]; ++steps) {
+			if (steps > w.cellCount()) {
+				return null; // shouldn't happen with a consistent search
+			}
+			int best = INF, bestDir = -1;
+			for (int d = 0; d < 4; ++d) {
+				int nx = x + moveVectors[d][0];
+				int ny = y + moveVectors[d][1];
+				int cost = stepCost(facing, d, nx, ny);
+				if (cost < INF && cost + g[state(nx, ny, d)] < best) {
+					best = cost + g[state(nx, ny, d)];
+					bestDir = d;
+				}
+			}
+			if (bestDir < 0) {
+				return null;
+			}
+			x += moveVectors[bestDir][0];
+			y += moveVectors[bestDir][1];
+			facing = bestDir;
+			path.add(new State(w, inventory, x, y));
+		}
+		return path;
+	}
+
+	/**
+	 * Updates the search after the contents of a cell changed.
+	 * Only the cost of stepping into the cell changes, so only its neighbours need updating.
+	 */
+	public void cellChanged(int x, int y) {
+		for (int [] v : moveVectors) {
+			int nx = x + v[0];
+			int ny = y + v[1];
+			if (w.inBounds(nx, ny)) {
+				for (int f = 0; f < 4; ++f) {
+					updateVertex(state(nx, ny, f));
+				}
+			}
+		}
+	}
+
+	private void computeShortestPath() {
+		int start = state(startX, startY, startFacing);
+		expanded = 0;
+		peakOpen = open.size();
+		while (!open.isEmpty() && (open.peekKey() < calculateKey(start) || rhs[start] != g[start])) {
+			peakOpen = Math.max(peakOpen, open.size());
+			expanded++;
+			int u = open.peek();
+			long oldKey = open.peekKey();
+			long newKey = calculateKey(u);
+			if (oldKey < newKey) {
+				open.put(u, newKey);
+			} else if (g[u] > rhs[u]) {
+				g[u] = rhs[u];
+				open.remove(u);
+				updatePredecessors(u);
+			} else {
+				g[u] = INF;
+				updateVertex(u);
+				updatePredecessors(u);
+			}
+		}
+	}
+
+	private void updateVertex(int s) {
+		int cell = s >> 2;
+		if (!goal[cell]) {
+			rhs[s] = bestSuccessor(s);
+		} else {
+			rhs[s] = 0;
+		}
+		if (g[s] != rhs[s]) {
+			open.put(s, calculateKey(s));
+		} else {
+			open.remove(s);
+		}
+	}
+
+	// the states that can step into the given one: any facing on the cell behind it
+	private void updatePredecessors(int s) {
+		int cell = s >> 2;
+		int facing = s & 3;
+		int px = w.indexX(cell) - moveVectors[facing][0];
+		int py = w.indexY(cell) - moveVectors[facing][1];
+		if (w.inBounds(px, py)) {
+			for (int f = 0; f < 4; ++f) {
+				updateVertex(state(px, py, f));
+			}
+		}
+	}
+
+	private int bestSuccessor(int s) {
+		int cell = s >> 2;
+		int facing = s & 3;
+		int x = w.indexX(cell);
+		int y = w.indexY(cell);
+		int best = INF;
+		for (int d = 0; d < 4; ++d) {
+			int nx = x + moveVectors[d][0];
+			int ny = y + moveVectors[d][1];
+			int cost = stepCost(facing, d, nx, ny);
+			if (cost < INF) {
+				best = Math.min(best, cost + g[state(nx, ny, d)]);
+			}
+		}
+		return Math.min(best, INF);
+	}
+
+	private int stepCost(int facing, int dir, int nx, int ny) {
+		if (!w.inBounds(nx, ny)) {
+			return INF;
+		}
+		int enter = enterCost(known[w.index(nx, ny)]);
+		if (enter < 0) {
+			return INF;
+		}
+		return State.turnsBetween(facing, dir) + 1 + enter;
+	}
+
+	// extra actions needed before stepping into a cell, or -1 if we can't
+	private int enterCost(byte type) {
+		int flags = World.FLAGS[type];
+		if ((flags & World.WALKABLE) != 0) {
+			return 0;
+		}
+		if (((flags & World.CHOPPABLE) != 0 && hasAxe) || ((flags & World.OPENABLE) != 0 && hasKey)) {
+			return 1;
+		}
+		return -1;
+	}
+
+	private long calculateKey(int s) {
+		int m = Math.min(g[s], rhs[s]);
+		int cell = s >> 2;
+		int h = Math.abs(w.indexX(cell) - startX) + Math.abs(w.indexY(cell) - startY);
+		return ((long) (m + h + km) << 32) | m;
+	}
+
+	private int state(int x, int y, int facing) {
+		return w.index(x, y) * 4 + facing;
+	}
+}
@@ -0,0 +1,90 @@
+package logic;
+
+import java.util.HashMap;
+
+import model.PackedState;
+
+/**
+ * Closed set of the A* planner that also knows about dominance between states.
+ *
+ * Closed nodes are grouped by place (cell and facing) and destroyed set. A state is dominated when
+ * a closed node in its group holds at least as many of every item and was reached at no greater
+ * cost: anything the state could still do, the closed node could do as well or better, so there is
+ * no point expanding it. Without this, every different inventory at a cell is its own branch.
+ */
+public class DominanceSet {
+
+	private StateTable nodes;
+
+	// closed node numbers by group, first element of each array is the count
+	private HashMap<Long, int []> groups;
+
+	private int pruned;
+
+	public DominanceSet(StateTable nodes) {
+		this.nodes = nodes;
+		this.groups = new HashMap<Long, int []>();
+		this.pruned = 0;
+	}
+
+	/**
+	 * Returns how many states were found to be dominated so far.
+	 */
+	public int getPruned() {
+		return pruned;
+	}
+
+	/**
+	 * Returns whether a closed node dominates a state with the given packed key, destroyed set and cost,
+	 * counting it as pruned if so.
+	 */
+	public boolean isDominated(long key, int set, int cost) {
+		int [] group = groups.get(group(key, set));
+		if (group == null) {
+			return false;
+		}
+		for (int i = 1; i <= group[0]; ++i) {
+			int node = group[i];
+			if (nodes.g(node) <= cost && PackedState.holdsAtLeast(nodes.key(node), key)) {
+				pruned++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Closes the given node. Closed nodes it dominates are dropped from its group,
+	 * since anything they would prune it prunes too.
+	 */
+	public void close(int node) {
+		nodes.close(node);
+		long key = nodes.key(node);
+		int cost = nodes.g(node);
+		Long id = group(key, nodes.set(node));
+		int [] group = groups.get(id);
+		if (group == null) {
+			group = new int[4];
+		}
+		int count = 0;
+		for (int i = 1; i <= group[0]; ++i) {
+			int other = group[i];
+			if (!(cost <= nodes.g(other) && PackedState.holdsAtLeast(key, nodes.key(other)))) {
+				group[++count] = other;
+			}
+		}
+		if (count + 2 > group.length) {
+			int [] bigger = new int[group.length * 2];
+			System.arraycopy(group, 0, bigger, 0, count + 1);
+			group = bigger;
+		}
+		group[++count] = node;
+		group[0] = count;
+		groups.put(id, group);
+	}
+
+	private static Long group(long key, int set) {
+		// place takes the low 34 bits of the packed state, the set id goes above it
+		return PackedState.place(key) | ((long) set << 34);
+	}
+}
@@ -0,0 +1,89 @@
+package logic;
+
+/**
+ * Breadth-first search bookkeeping over map cells that allocates nothing per search: an array of
+ * cell indexes for the queue, a parent per cell, and a visited stamp per cell. Starting a new
+ * search just bumps the stamp, so nothing has to be cleared. A search queues each cell at most
+ * once, so the queue never needs more room than there are cells.
+ */
+public class FloodFill {
+
+	public static final int NONE = -1;
+
+	private int [] queue;
+	private int head, tail;
+	private int [] parent; // by cell
+	private int [] depth; // by cell, steps from the start cell it was reached from
+	private int [] visited; // by cell, generation it was last visited in
+	private int generation;
+
+	public FloodFill(int cells) {
+		queue = new int[cells];
+		parent = new int[cells];
+		depth = new int[cells];
+		visited = new int[cells];
+		generation = 0;
+	}
+
+	/**
+	 * Forgets the last search.
+	 */
+	public void start() {
+		generation++;
+		head = 0;
+		tail = 0;
+	}
+
+	/**
+	 * Queues the cell unless this search already visited it.
+	 *
+	 * @param from - cell it was reached from, NONE for a start cell
+	 * @return - whether it was queued
+	 */
+	public boolean visit(int cell, int from) {
+		if (visited[cell] == generation) {
+			return false;
+		}
+		visited[cell] = generation;
+		parent[cell] = from;
+		depth[cell] = from == NONE ? 0 : depth[from] + 1;
+		queue[tail++] = cell;
+		return true;
+	}
+
+	/**
+	 * Returns how many cells it has room for (cell indexes must be below this).
+	 */
+	public int capacity() {
+		return visited.length;
+	}
+
+	public boolean isEmpty() {
+		return head == tail;
+	}
+
+	/**
+	 * Takes the next cell off the queue (the queue must not be empty).
+	 */
+	public int poll() {
+		return queue[head++];
+	}
+
+	public boolean isVisited(int cell) {
+		return visited[cell] == generation;
+	}
+
+	/**
+	 * Returns the number of steps from a start cell to the given visited cell.
+	 */
+	public int depth(int cell) {
+		return depth[cell];
+	}
+
+	/**
+	 * Returns the cell the given visited cell was reached from, NONE for a start cell.
+	 */
+	public int parent(int cell) {
+		return parent[cell];
+	}
+}
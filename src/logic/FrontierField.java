@@ -0,0 +1,334 @@
+package logic;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import model.Inventory;
+import model.State;
+import model.World;
+import model.WorldChanges;
+
+/**
+ * Distance from every known cell to the nearest place worth exploring, kept up to date as the map is revealed.
+ *
+ * Targets are the cells explore() looks for: cells holding an item, or from which we would see
+ * unexplored cells (see World.hasUnexploredNear). Walking is the same as for explore(): over floor
+ * and items, through trees with an axe and doors with a key, never blasting. The field holds the
+ * number of steps from each cell to its nearest target, as a breadth-first search from all the
+ * targets at once would find.
+ *
+ * Instead of searching the whole known map each time a new target is wanted, the field is repaired
+ * after every view. Only cells near the changed ones can change whether they are targets or can be walked
+ * on; distances that depended on a cell that got worse are raised, then everything raised or
+ * improved is lowered again from its neighbours. The way to the nearest target is found by walking
+ * down the field from the agent, picking directions in the order explore()'s search tries them, so
+ * it is the same path that search finds.
+ */
+public class FrontierField {
+
+	static final int INF = 1 << 29;
+
+	private static final int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
+
+	private World w;
+	private boolean hasAxe, hasKey;
+
+	// by cell
+	private int [] dist; // steps to the nearest target, INF if none can be reached
+	private boolean [] target;
+	private boolean [] walkable;
+
+	private int [] changed; // cells whose target or walkable flag the current update changed
+	private int changedCount;
+	private int [] raised; // cells whose distance the current repair raised to INF
+	private int [] raisedFrom; // and the distance they had
+	private int raisedCount;
+	private IntHeap open;
+	private FloodFill fill;
+
+	private int targets; // number of target cells
+	private int repaired; // distances recomputed since the last nearest()
+	private int version; // world version the tables are sized for
+
+	public FrontierField(World w, Inventory inventory) {
+		this.w = w;
+		hasAxe = inventory.get('a') > 0;
+		hasKey = inventory.get('k') > 0;
+		allocate();
+		rebuild();
+	}
+
+	// sizes the tables for the world's cells, again whenever the world grows
+	private void allocate() {
+		int cells = w.cellCount();
+		dist = new int[cells];
+		target = new boolean[cells];
+		walkable = new boolean[cells];
+		changed = new int[cells];
+		raised = new int[cells];
+		raisedFrom = new int[cells];
+		open = new IntHeap(cells);
+		fill = new FloodFill(cells);
+		version = w.getVersion();
+	}
+
+	/**
+	 * Returns how many cells are targets.
+	 */
+	public int getTargets() {
+		return targets;
+	}
+
+	/**
+	 * Returns how many distances were recomputed since the last call to nearest().
+	 */
+	public int getRepaired() {
+		return repaired;
+	}
+
+	/**
+	 * Returns the number of steps from the given cell to the nearest target, INF if none can be reached.
+	 */
+	public int distance(int x, int y) {
+		return dist[w.index(x, y)];
+	}
+
+	/**
+	 * Brings the field up to date with the cells the world last published as changed, and whatever
+	 * the inventory now holds. Has to be called after every update, so no change is missed.
+	 */
+	public void update(WorldChanges changes, Inventory inventory) {
+		boolean axe = inventory.get('a') > 0;
+		boolean key = inventory.get('k') > 0;
+		if (axe != hasAxe || key != hasKey || version != w.getVersion()) {
+			// what can be walked through changed all over the map, or the map grew
+			hasAxe = axe;
+			hasKey = key;
+			if (version != w.getVersion()) {
+				allocate();
+			}
+			rebuild();
+			return;
+		}
+		if (changes.isEmpty()) {
+			return;
+		}
+		// whether a cell is a target depends on cells up to VIEW_HALF_SIZE away
+		int r = World.VIEW_HALF_SIZE;
+		changedCount = 0;
+		for (int y = changes.miny - r; y <= changes.maxy + r; ++y) {
+			for (int x = changes.minx - r; x <= changes.maxx + r; ++x) {
+				if (w.inBounds(x, y) && classify(x, y)) {
+					changed[changedCount++] = w.index(x, y);
+				}
+			}
+		}
+		if (changedCount > 0) {
+			repair();
+		}
+	}
+
+	/**
+	 * Returns the path to the nearest target from the given cell (which is where the path starts),
+	 * or null if no target can be reached.
+	 *
+	 * @param inventory - inventory to give the path States
+	 */
+	public List<State> nearest(int x, int y, Inventory inventory) {
+		repaired = 0;
+		LinkedList<State> path = new LinkedList<State>();
+		State s = new State(w, inventory, x, y);
+		path.add(s);
+		if ((w.flags(x, y) & World.ITEM) != 0 || w.hasUnexploredNear(x, y)) {
+			return path; // we are standing on one
+		}
+		int step = downhill(x, y, INF);
+		if (step < 0) {
+			return null;
+		}
+		while (true) {
+			x += moveVectors[step][0];
+			y += moveVectors[step][1];
+			State next = new State(w, inventory, x, y);
+			next.predecessor = s;
+			path.add(next);
+			s = next;
+			int d = dist[w.index(x, y)];
+			if (d == 0) {
+				return path;
+			}
+			step = downhill(x, y, d);
+		}
+	}
+
+	// first direction (E, N, W, S) to a neighbour nearest a target and nearer than the given distance, -1 if none
+	private int downhill(int x, int y, int below) {
+		int best = below, dir = -1;
+		for (int d = 0; d < 4; ++d) {
+			int nx = x + moveVectors[d][0];
+			int ny = y + moveVectors[d][1];
+			if (w.inBounds(nx, ny) && dist[w.index(nx, ny)] < best) {
+				best = dist[w.index(nx, ny)];
+				dir = d;
+			}
+		}
+		return dir;
+	}
+
+	/**
+	 * Whether exploring may step into a cell of the given type: floor, items, and trees or
+	 * doors we hold the tool for. Exploring never uses anything up.
+	 */
+	static boolean canExplore(byte type, boolean hasAxe, boolean hasKey) {
+		int flags = World.FLAGS[type];
+		return (flags & World.WALKABLE) != 0 || ((flags & World.CHOPPABLE) != 0 && hasAxe) || ((flags & World.OPENABLE) != 0 && hasKey);
+	}
+
+	// recomputes the flags of a cell, returning whether they changed
+	private boolean classify(int x, int y) {
+		int cell = w.index(x, y);
+		byte t = w.type(x, y);
+		boolean walk = canExplore(t, hasAxe, hasKey);
+		boolean goal = walk && ((World.FLAGS[t] & World.ITEM) != 0 || w.hasUnexploredNear(x, y));
+		if (walk == walkable[cell] && goal == target[cell]) {
+			return false;
+		}
+		if (goal != target[cell]) {
+			targets += goal ? 1 : -1;
+		}
+		walkable[cell] = walk;
+		target[cell] = goal;
+		return true;
+	}
+
+	// recomputes everything, by a breadth-first search from all the targets
+	private void rebuild() {
+		targets = 0;
+		for (int cell = 0; cell < dist.length; ++cell) {
+			dist[cell] = INF;
+			walkable[cell] = false;
+			target[cell] = false;
+		}
+		fill.start();
+		for (int y = w.miny; y <= w.maxy; ++y) {
+			for (int x = w.minx; x <= w.maxx; ++x) {
+				classify(x, y);
+				if (target[w.index(x, y)]) {
+					dist[w.index(x, y)] = 0;
+					fill.visit(w.index(x, y), FloodFill.NONE);
+				}
+			}
+		}
+		while (!fill.isEmpty()) {
+			int cell = fill.poll();
+			repaired++;
+			int x = w.indexX(cell), y = w.indexY(cell);
+			for (int [] v : moveVectors) {
+				int nx = x + v[0], ny = y + v[1];
+				if (w.inBounds(nx, ny) && walkable[w.index(nx, ny)] && fill.visit(w.index(nx, ny), cell)) {
+					dist[w.index(nx, ny)] = dist[cell] + 1;
+				}
+			}
+		}
+	}
+
+	// fixes the distances after the cells in changed[] changed flags
+	private void repair() {
+		// raise: cells that got worse, and then every cell left with no neighbour one step nearer a target
+		raisedCount = 0;
+		for (int i = 0; i < changedCount; ++i) {
+			int cell = changed[i];
+			if (dist[cell] < INF && (!walkable[cell] || (dist[cell] == 0 && !target[cell]))) {
+				raise(cell);
+			}
+		}
+		for (int i = 0; i < raisedCount; ++i) {
+			int cell = raised[i];
+			int x = w.indexX(cell), y = w.indexY(cell);
+			for (int [] v : moveVectors) {
+				int nx = x + v[0], ny = y + v[1];
+				if (!w.inBounds(nx, ny)) {
+					continue;
+				}
+				int n = w.index(nx, ny);
+				if (dist[n] == raisedFrom[i] + 1 && !supported(nx, ny)) {
+					raise(n);
+				}
+			}
+		}
+		// lower: what can now be reached from the neighbours it has left, and anything that improved
+		for (int i = 0; i < raisedCount; ++i) {
+			seed(raised[i]);
+		}
+		for (int i = 0; i < changedCount; ++i) {
+			seed(changed[i]);
+		}
+		lower();
+	}
+
+	private void raise(int cell) {
+		raised[raisedCount] = cell;
+		raisedFrom[raisedCount] = dist[cell];
+		raisedCount++;
+		dist[cell] = INF;
+		repaired++;
+	}
+
+	// whether a cell still has a neighbour one step nearer a target
+	private boolean supported(int x, int y) {
+		int d = dist[w.index(x, y)];
+		for (int [] v : moveVectors) {
+			int nx = x + v[0], ny = y + v[1];
+			if (w.inBounds(nx, ny) && dist[w.index(nx, ny)] == d - 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// queues a cell at the distance its neighbours give it, if that is better than what it has
+	private void seed(int cell) {
+		if (!walkable[cell]) {
+			return;
+		}
+		int d = INF;
+		if (target[cell]) {
+			d = 0;
+		} else {
+			int x = w.indexX(cell), y = w.indexY(cell);
+			for (int [] v : moveVectors) {
+				int nx = x + v[0], ny = y + v[1];
+				if (w.inBounds(nx, ny)) {
+					d = Math.min(d, dist[w.index(nx, ny)] + 1);
+				}
+			}
+		}
+		if (d < dist[cell] && (!open.contains(cell) || d < open.key(cell))) {
+			open.put(cell, d);
+		}
+	}
+
+	// Dijkstra from the queued cells, lowering distances
+	private void lower() {
+		while (!open.isEmpty()) {
+			int d = (int) open.peekKey();
+			int cell = open.poll();
+			if (d >= dist[cell]) {
+				continue;
+			}
+			dist[cell] = d;
+			repaired++;
+			int x = w.indexX(cell), y = w.indexY(cell);
+			for (int [] v : moveVectors) {
+				int nx = x + v[0], ny = y + v[1];
+				if (!w.inBounds(nx, ny)) {
+					continue;
+				}
+				int n = w.index(nx, ny);
+				if (walkable[n] && !target[n] && d + 1 < dist[n] && (!open.contains(n) || d + 1 < open.key(n))) {
+					open.put(n, d + 1);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+import model.State;
+
+/**
+ * Memory-bounded plan search (IDA*), for when there are too many States to keep in a table.
+ *
+ * Depth-first searches are run with a growing bound on g + w * h, each one starting over from the
+ * initial State, so only the current path and the States hanging off it are held. The path is walked
+ * with an explicit stack rather than recursion, so a long plan can't overflow the thread's stack. To avoid
+ * re-expanding the same State through every order of the same moves, a fixed-size transposition
+ * table remembers, per Zobrist key, the cheapest cost a State was reached at in the current
+ * iteration; reaching it again for no less is cut off. The table overwrites on collision, so the
+ * memory used is fixed however big the search gets.
+ *
+ * States and step costs are the same as the A* planner's when planning in actions. Plans are not
+ * the cheapest: the heuristic is weighted and the bound grows by at least a quarter per iteration.
+ */
+public class IDAStar {
+
+	private static final int FOUND = -1;
+	private static final int EXPANDED = -2; // the State's successors were pushed on the stack
+	private static final int INF = Integer.MAX_VALUE;
+
+	// most promising (lowest g + w * h) first
+	private static final Comparator<State> BY_F = new Comparator<State>() {
+		@Override
+		public int compare(State a, State b) {
+			return a.fcost - b.fcost;
+		}
+	};
+
+	private double weight;
+	private long maxExpansions;
+
+	// transposition table
+	private long [] keys;
+	private int [] costs;
+	private int [] iterations;
+	private int mask;
+	private int iteration;
+
+	private int goalX, goalY;
+	private long deadline;
+	private long expanded;
+	private boolean cutOff; // whether the last search hit its expansion limit or deadline
+	private LinkedList<State> path;
+	private ArrayList<Frame> stack; // a frame per State on the path
+	
+	// a State on the path being searched below: its successors, most promising first
+	private static class Frame {
+		List<State> children;
+		int next; // index of the next child to search
+		int min = INF; // smallest f over the bound seen below so far
+	}
+
+	/**
+	 * @param weight - heuristic weight, 1 for the cheapest plan
+	 * @param tableBits - log2 of the number of transposition table entries
+	 * @param maxExpansions - give up after expanding this many States in total
+	 */
+	public IDAStar(double weight, int tableBits, long maxExpansions) {
+		this.weight = weight;
+		this.maxExpansions = maxExpansions;
+		keys = new long[1 << tableBits];
+		costs = new int[1 << tableBits];
+		iterations = new int[1 << tableBits];
+		mask = (1 << tableBits) - 1;
+		iteration = 0;
+	}
+
+	/**
+	 * Returns how many States the last search expanded, over all its iterations.
+	 */
+	public long getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * Returns whether the last search gave up at its expansion limit or deadline.
+	 */
+	public boolean isCutOff() {
+		return cutOff;
+	}
+
+	/**
+	 * Searches from the initial State (facing tracked) to the goal cell.
+	 *
+	 * @param deadline - System.nanoTime() by which to give up
+	 * @return - the path to the goal, or null if there isn't one or the search gave up
+	 */
+	public List<State> search(State initial, int goalX, int goalY, long deadline) {
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.deadline = deadline;
+		expanded = 0;
+		cutOff = false;
+		path = new LinkedList<State>();
+		stack = new ArrayList<Frame>();
+		initial.cost = 0;
+		path.add(initial);
+		int bound = f(initial);
+		while (true) {
+			iteration++;
+			int t = dfs(initial, bound);
+			if (t == FOUND) {
+				return path;
+			}
+			if (t == INF || cutOff) {
+				return null;
+			}
+			// raise the bound by at least a quarter, so there are few iterations even when
+			// the cost of each overrun is only one more than the last bound
+			bound = Math.max(t, bound + Math.max(1, bound / 4));
+		}
+	}
+
+	// returns FOUND, or the smallest f over the bound seen below the root (INF if none)
+	private int dfs(State root, int bound) {
+		int t = expand(root, bound);
+		if (t != EXPANDED) {
+			return t;
+		}
+		while (true) {
+			Frame top = stack.get(stack.size() - 1);
+			if (top.next < top.children.size()) {
+				State n = top.children.get(top.next++);
+				path.addLast(n);
+				t = expand(n, bound);
+				if (t == EXPANDED) {
+					continue;
+				}
+				if (t == FOUND) {
+					return FOUND;
+				}
+			} else {
+				// searched everything below the top State
+				stack.remove(stack.size() - 1);
+				t = top.min;
+				if (stack.isEmpty()) {
+					return t;
+				}
+			}
+			path.removeLast();
+			Frame parent = stack.get(stack.size() - 1);
+			parent.min = Math.min(parent.min, t);
+		}
+	}
+
+	// returns FOUND, the f of a State over the bound, INF for one cut off, or EXPANDED having pushed its frame
+	private int expand(State s, int bound) {
+		int f = f(s);
+		if (f > bound) {
+			return f;
+		}
+		if (s.x == goalX && s.y == goalY) {
+			return FOUND;
+		}
+		// the clock costs more to read than an expansion, so only look every 1024
+		if (++expanded > maxExpansions || ((expanded & 1023) == 0 && System.nanoTime() > deadline)) {
+			cutOff = true;
+			return INF;
+		}
+		long key = s.key();
+		int slot = (int) (key ^ (key >>> 32)) & mask;
+		if (iterations[slot] == iteration && keys[slot] == key && costs[slot] <= s.cost) {
+			return INF; // been here this iteration for no more, whatever is below was seen then
+		}
+		keys[slot] = key;
+		costs[slot] = s.cost;
+		iterations[slot] = iteration;
+
+		List<State> neighbours = new ArrayList<State>(s.getNeighbours(true));
+		for (State n : neighbours) {
+			n.cost = s.cost + n.stepCost(s);
+			n.fcost = f(n);
+		}
+		Collections.sort(neighbours, BY_F);
+
+		Frame frame = new Frame();
+		frame.children = neighbours;
+		stack.add(frame);
+		return EXPANDED;
+	}
+
+	private int f(State s) {
+		return s.cost + (int) (weight * s.estimate(goalX, goalY));
+	}
+}
@@ -0,0 +1,29 @@
+package logic;
+
+import java.util.List;
+
+import model.Inventory;
+import model.State;
+import model.World;
+
+/**
+ * A way of planning a path from one cell to another, raced against others by the PortfolioPlanner.
+ * Strategies run on their own thread against a snapshot of the world and inventory that nothing else changes.
+ */
+public interface IPlanStrategy {
+
+	/**
+	 * Name to report statistics under.
+	 */
+	String getName();
+
+	/**
+	 * Plans a path from the start cell and facing to the goal cell.
+	 * Should give up (returning null) once past the deadline or when the thread is interrupted.
+	 *
+	 * @param move - moves made so far, for the start State (States stop branching at Agent.MAX_MOVES)
+	 * @param deadline - System.nanoTime() by which to give up
+	 * @return every cell of the path, starting with the start, or null if no plan was found
+	 */
+	List<State> plan(World w, Inventory inventory, int goalX, int goalY, int startX, int startY, int facing, int move, long deadline);
+}
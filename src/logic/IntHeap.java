@@ -0,0 +1,140 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of small int elements (cell or node numbers) with long priorities.
+ * Each element can be in the heap at most once; its position is tracked so that contains,
+ * priority changes and removal of an arbitrary element are O(1) / O(log n).
+ */
+public class IntHeap {
+
+	private int [] heap;
+	private long [] keys; // by element
+	private int [] pos; // by element, -1 when not in the heap
+	private int size;
+
+	public IntHeap(int capacity) {
+		heap = new int[Math.max(capacity, 1)];
+		keys = new long[Math.max(capacity, 1)];
+		pos = new int[Math.max(capacity, 1)];
+		Arrays.fill(pos, -1);
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int e) {
+		return pos[e] >= 0;
+	}
+
+	public long key(int e) {
+		return keys[e];
+	}
+
+	/**
+	 * Returns the element with the lowest priority (the heap must not be empty).
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	public long peekKey() {
+		return keys[heap[0]];
+	}
+
+	public int poll() {
+		int top = heap[0];
+		remove(top);
+		return top;
+	}
+
+	/**
+	 * Adds the element, or changes its priority if it is already in the heap.
+	 */
+	public void put(int e, long key) {
+		if (pos[e] >= 0) {
+			long old = keys[e];
+			keys[e] = key;
+			if (key < old) {
+				siftUp(pos[e]);
+			} else {
+				siftDown(pos[e]);
+			}
+			return;
+		}
+		keys[e] = key;
+		heap[size] = e;
+		pos[e] = size;
+		size++;
+		siftUp(size - 1);
+	}
+
+	/**
+	 * Removes the element if it is in the heap.
+	 */
+	public void remove(int e) {
+		int i = pos[e];
+		if (i < 0) {
+			return;
+		}
+		pos[e] = -1;
+		size--;
+		if (i < size) {
+			int last = heap[size];
+			heap[i] = last;
+			pos[last] = i;
+			siftDown(i);
+			siftUp(pos[last]);
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; ++i) {
+			pos[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int i) {
+		int e = heap[i];
+		long key = keys[e];
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (keys[heap[parent]] <= key) {
+				break;
+			}
+			heap[i] = heap[parent];
+			pos[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = e;
+		pos[e] = i;
+	}
+
+	private void siftDown(int i) {
+		int e = heap[i];
+		long key = keys[e];
+		int half = size >> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+				child++;
+			}
+			if (key <= keys[heap[child]]) {
+				break;
+			}
+			heap[i] = heap[child];
+			pos[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = e;
+		pos[e] = i;
+	}
+}
@@ -0,0 +1,44 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Hands out a small int id for every distinct (by equals) value it is given, so that
+ * search tables can refer to a bulky value such as a destroyed cell set by id.
+ * Values must not be modified once interned.
+ */
+public class Interner<T> {
+
+	private HashMap<T, Integer> ids;
+	private ArrayList<T> values;
+
+	public Interner() {
+		ids = new HashMap<T, Integer>();
+		values = new ArrayList<T>();
+	}
+
+	/**
+	 * Returns the id of the given value, assigning a new one if it hasn't been seen.
+	 */
+	public int intern(T value) {
+		Integer id = ids.get(value);
+		if (id == null) {
+			id = values.size();
+			ids.put(value, id);
+			values.add(value);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the value with the given id.
+	 */
+	public T get(int id) {
+		return values.get(id);
+	}
+
+	public int size() {
+		return values.size();
+	}
+}
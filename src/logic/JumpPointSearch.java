@@ -0,0 +1,230 @@
+package logic;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import model.Inventory;
+import model.State;
+import model.World;
+
+/**
+ * Jump Point Search over open floor, for movement that uses no items.
+ *
+ * On a 4-connected grid of uniform floor most paths between two cells are equally long, and plain
+ * A* expands all of them. JPS only stops at jump points: cells where a wall beside the line of travel
+ * opens up ("forced" neighbours), where a sideways scan from a vertical run finds one, or the goal.
+ * Runs of open floor in between are skipped without being queued. The pruning rules are those for
+ * grids without diagonal moves (as in PathFinding.js).
+ *
+ * Only empty floor is walkable (and the goal cell, whatever is in it), so a path found here needs no
+ * chop, blast, open or pickup along the way. Like the A* planner when planning in actions, nodes are
+ * (jump point, facing) and a leg between jump points costs the turns to face along it plus its length.
+ * With turns in the cost JPS no longer guarantees the cheapest path, but the paths it prunes differ
+ * only in where they turn.
+ */
+public class JumpPointSearch {
+
+	private static final int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
+
+	private World w;
+
+	// search node number is cell index * 4 + facing
+	private int [] g;
+	private int [] parent; // node we jumped from, -1 for the start
+	private int [] stamp; // search the g and parent entries belong to
+	private int search;
+	private IntHeap open;
+
+	private int goalX, goalY;
+	private State scratch; // for heuristic estimates
+
+	private int expanded; // jump points expanded by the last search
+	private int peakOpen; // most jump points queued at once in the last search
+	private int version; // world version the tables are sized for
+
+	public JumpPointSearch(World w) {
+		this.w = w;
+		allocate();
+		scratch = new State(w, null, 0, 0);
+	}
+
+	// sizes the tables for the world's cells, again whenever the world grows
+	private void allocate() {
+		int nodes = w.cellCount() * 4;
+		g = new int[nodes];
+		parent = new int[nodes];
+		stamp = new int[nodes];
+		search = 0;
+		open = new IntHeap(nodes);
+		version = w.getVersion();
+	}
+
+	/**
+	 * Returns how many jump points the last search expanded.
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * Returns the most jump points the last search had queued at once.
+	 */
+	public int getPeakOpen() {
+		return peakOpen;
+	}
+
+	/**
+	 * Searches with no deadline.
+	 */
+	public List<State> search(int goalX, int goalY, int startX, int startY, int facing, Inventory inventory) {
+		return search(goalX, goalY, startX, startY, facing, inventory, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Finds a path over empty floor from the given cell and facing to the goal cell.
+	 *
+	 * @param inventory - inventory to give the path States (it is not used up along the way)
+	 * @param deadline - System.nanoTime() by which to give up (it also gives up if the thread is interrupted)
+	 * @return - every cell of the path, starting with our own, or null if the goal can't be
+	 *           reached without using or picking up items (or we gave up)
+	 */
+	public List<State> search(int goalX, int goalY, int startX, int startY, int facing, Inventory inventory, long deadline) {
+		if (!w.inBounds(goalX, goalY) || !w.inBounds(startX, startY)) {
+			return null;
+		}
+		if (version != w.getVersion()) {
+			allocate();
+		}
+		this.goalX = goalX;
+		this.goalY = goalY;
+		search++;
+		open.clear();
+		expanded = 0;
+		peakOpen = 0;
+
+		int start = node(startX, startY, facing);
+		reach(start, 0, -1);
+		while (!open.isEmpty()) {
+			if (System.nanoTime() > deadline || Thread.currentThread().isInterrupted()) {
+				return null;
+			}
+			peakOpen = Math.max(peakOpen, open.size());
+			int current = open.poll();
+			expanded++;
+			int cell = current >> 2;
+			int x = w.indexX(cell);
+			int y = w.indexY(cell);
+			if (x == goalX && y == goalY) {
+				return path(current, inventory);
+			}
+			int from = current & 3;
+			for (int d = 0; d < 4; ++d) {
+				if (!isNeighbour(current == start, x, y, from, d)) {
+					continue;
+				}
+				int length = jump(x, y, d);
+				if (length > 0) {
+					int jx = x + moveVectors[d][0] * length;
+					int jy = y + moveVectors[d][1] * length;
+					int cost = g[current] + State.turnsBetween(from, d) + length;
+					int next = node(jx, jy, d);
+					if (stamp[next] != search || cost < g[next]) {
+						reach(next, cost, current);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	// whether a node reached moving in direction "from" should try direction d (neighbour pruning)
+	private boolean isNeighbour(boolean isStart, int x, int y, int from, int d) {
+		if (isStart) {
+			return walkable(x + moveVectors[d][0], y + moveVectors[d][1]);
+		}
+		if (d == (from + 2) % 4) {
+			return false; // never straight back
+		}
+		return walkable(x + moveVectors[d][0], y + moveVectors[d][1]);
+	}
+
+	/**
+	 * Scans from the given cell in direction d, returning how many steps away the next jump point is,
+	 * or 0 if the scan runs into something that isn't floor first.
+	 */
+	private int jump(int x, int y, int d) {
+		int dx = moveVectors[d][0];
+		int dy = moveVectors[d][1];
+		for (int length = 1; ; ++length) {
+			x += dx;
+			y += dy;
+			if (!walkable(x, y)) {
+				return 0;
+			}
+			if (x == goalX && y == goalY) {
+				return length;
+			}
+			if (dx != 0) {
+				// moving horizontally, look for openings above and below
+				if ((walkable(x, y - 1) && !walkable(x - dx, y - 1)) || (walkable(x, y + 1) && !walkable(x - dx, y + 1))) {
+					return length;
+				}
+			} else {
+				// moving vertically, look for openings left and right
+				if ((walkable(x - 1, y) && !walkable(x - 1, y - dy)) || (walkable(x + 1, y) && !walkable(x + 1, y - dy))) {
+					return length;
+				}
+				// and stop wherever a horizontal scan finds a jump point
+				if (jump(x, y, 0) > 0 || jump(x, y, 2) > 0) {
+					return length;
+				}
+			}
+		}
+	}
+
+	private boolean walkable(int x, int y) {
+		if (!w.inBounds(x, y)) {
+			return false;
+		}
+		return w.type(x, y) == World.EMPTY || (x == goalX && y == goalY);
+	}
+
+	private void reach(int node, int cost, int from) {
+		stamp[node] = search;
+		g[node] = cost;
+		parent[node] = from;
+		int cell = node >> 2;
+		scratch.x = w.indexX(cell);
+		scratch.y = w.indexY(cell);
+		scratch.facing = node & 3;
+		int f = cost + scratch.estimate(goalX, goalY);
+		open.put(node, ((long) f << 32) | cost);
+	}
+
+	// fills in the cells between the jump points
+	private List<State> path(int node, Inventory inventory) {
+		LinkedList<State> path = new LinkedList<State>();
+		int cell = node >> 2;
+		path.addFirst(new State(w, inventory, w.indexX(cell), w.indexY(cell)));
+		while (parent[node] >= 0) {
+			int from = parent[node] >> 2;
+			int x = w.indexX(cell);
+			int y = w.indexY(cell);
+			int fx = w.indexX(from);
+			int fy = w.indexY(from);
+			int [] v = moveVectors[node & 3];
+			while (x != fx || y != fy) {
+				x -= v[0];
+				y -= v[1];
+				path.addFirst(new State(w, inventory, x, y));
+			}
+			node = parent[node];
+			cell = from;
+		}
+		return path;
+	}
+
+	private int node(int x, int y, int facing) {
+		return w.index(x, y) * 4 + facing;
+	}
+}
@@ -0,0 +1,133 @@
+package logic;
+
+import java.util.HashMap;
+
+import model.State;
+
+/**
+ * Open list for the A* planner: an indexed binary min-heap of States keyed on fcost.
+ *
+ * Every queued State remembers its slot in the heap (State.heapIndex) and is also
+ * registered in a hash map, so checking whether an equal State is already queued is a
+ * hash lookup rather than the linear scan PriorityQueue.contains() does, and lowering
+ * the cost of a queued State only sifts it up from where it sits (O(log n)).
+ */
+public class OpenList {
+
+	private State [] heap;
+	private int size;
+
+	// canonical queued instance for every State in the heap
+	private HashMap<State, State> members;
+
+	public OpenList() {
+		heap = new State[64];
+		size = 0;
+		members = new HashMap<State, State>();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the queued State equal to the given one, or null if there isn't one.
+	 * Use this to get at the instance whose cost/predecessor should be updated.
+	 */
+	public State get(State s) {
+		return members.get(s);
+	}
+
+	public boolean contains(State s) {
+		return members.containsKey(s);
+	}
+
+	/**
+	 * Queue a State that is not already in the open list.
+	 */
+	public void add(State s) {
+		if (size == heap.length) {
+			State [] bigger = new State[heap.length * 2];
+			System.arraycopy(heap, 0, bigger, 0, size);
+			heap = bigger;
+		}
+		members.put(s, s);
+		heap[size] = s;
+		s.heapIndex = size;
+		size++;
+		siftUp(s.heapIndex);
+	}
+
+	/**
+	 * Returns the State with the lowest fcost without removing it (null if empty).
+	 */
+	public State peek() {
+		return size > 0 ? heap[0] : null;
+	}
+
+	/**
+	 * Removes and returns the State with the lowest fcost (null if empty).
+	 */
+	public State poll() {
+		if (size == 0) {
+			return null;
+		}
+		State top = heap[0];
+		size--;
+		if (size > 0) {
+			heap[0] = heap[size];
+			heap[0].heapIndex = 0;
+			siftDown(0);
+		}
+		heap[size] = null;
+		top.heapIndex = -1;
+		members.remove(top);
+		return top;
+	}
+
+	/**
+	 * Restore the heap after the fcost of a queued State has been lowered.
+	 * The State must be the instance returned by get().
+	 */
+	public void decreaseKey(State s) {
+		siftUp(s.heapIndex);
+	}
+
+	private void siftUp(int i) {
+		State s = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (heap[parent].fcost <= s.fcost) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heap[i].heapIndex = i;
+			i = parent;
+		}
+		heap[i] = s;
+		s.heapIndex = i;
+	}
+
+	private void siftDown(int i) {
+		State s = heap[i];
+		int half = size >> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && heap[child + 1].fcost < heap[child].fcost) {
+				child++;
+			}
+			if (s.fcost <= heap[child].fcost) {
+				break;
+			}
+			heap[i] = heap[child];
+			heap[i].heapIndex = i;
+			i = child;
+		}
+		heap[i] = s;
+		s.heapIndex = i;
+	}
+}
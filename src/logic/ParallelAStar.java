@@ -0,0 +1,282 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import model.State;
+import model.Zobrist;
+
+/**
+ * Hash distributed A* (HDA*) over plan States, run on a ForkJoinPool.
+ *
+ * Every State has an owner worker, picked by its Zobrist key. A worker keeps the open list and best
+ * costs of the States it owns and is the only thread that touches them. Successors it generates that
+ * belong to another worker are posted to that worker's lock-free inbox, and picked up next time round
+ * its loop. Since workers expand in their own order rather than the global f order, a State can be
+ * reached more cheaply after it was expanded; it is then simply queued again.
+ *
+ * Once a plan is found its cost is the incumbent, and workers only expand States with f below it.
+ * The search is over when every worker is idle (nothing below the incumbent queued, empty inbox), no
+ * message is in flight and no worker did anything while that was being checked. With a consistent
+ * heuristic the incumbent is then the cheapest plan, the same cost the serial search finds.
+ *
+ * An idle worker parks, for twice as long each time round up to MAX_PARK_NANOS, and posting to its
+ * inbox wakes it.
+ */
+public class ParallelAStar {
+
+	private static final long MAX_PARK_NANOS = 1000000;
+
+	private ForkJoinPool pool;
+	private int threads;
+
+	private List<ConcurrentLinkedQueue<State>> inboxes;
+	private AtomicReferenceArray<Thread> running; // thread each worker runs on, to wake it
+	private AtomicInteger inFlight; // States posted to an inbox and not yet taken out
+	private AtomicLong activity; // bumped whenever a worker takes or expands anything
+	private AtomicIntegerArray idle; // 1 when the worker has nothing to do, written by that worker only
+	private AtomicReference<State> bestGoal; // end of the best plan found so far
+	private AtomicInteger incumbent; // its cost, for quick checks
+	private AtomicInteger reached; // States added to any open list
+	private AtomicInteger expanded; // States expanded, over all workers
+	private AtomicBoolean stop;
+	private volatile boolean cutOff;
+
+	private int goalX, goalY;
+	private int maxNodes;
+
+	public ParallelAStar(int threads) {
+		this.threads = threads;
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Returns whether the last search gave up at its node limit.
+	 */
+	public boolean isCutOff() {
+		return cutOff;
+	}
+
+	/**
+	 * Returns how many States the last search queued, over all workers.
+	 */
+	public int getReached() {
+		return reached == null ? 0 : reached.get();
+	}
+
+	/**
+	 * Returns how many States the last search expanded, over all workers.
+	 */
+	public int getExpanded() {
+		return expanded == null ? 0 : expanded.get();
+	}
+
+	/**
+	 * Searches from the initial State (facing tracked) to the goal cell.
+	 *
+	 * @param maxNodes - give up, setting isCutOff, once this many States have been queued
+	 * @return - the cheapest path to the goal, or null if there isn't one (or we gave up)
+	 */
+	public List<State> search(State initial, int goalX, int goalY, int maxNodes) {
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.maxNodes = maxNodes;
+		inboxes = new ArrayList<ConcurrentLinkedQueue<State>>(threads);
+		for (int i = 0; i < threads; ++i) {
+			inboxes.add(new ConcurrentLinkedQueue<State>());
+		}
+		running = new AtomicReferenceArray<Thread>(threads);
+		idle = new AtomicIntegerArray(threads);
+		inFlight = new AtomicInteger(0);
+		activity = new AtomicLong(0);
+		incumbent = new AtomicInteger(Integer.MAX_VALUE);
+		bestGoal = new AtomicReference<State>(null);
+		reached = new AtomicInteger(0);
+		expanded = new AtomicInteger(0);
+		stop = new AtomicBoolean(false);
+		cutOff = false;
+
+		initial.cost = 0;
+		initial.predecessor = null;
+		post(initial);
+
+		List<Future<Void>> workers = new ArrayList<Future<Void>>(threads);
+		for (int i = 0; i < threads; ++i) {
+			workers.add(pool.submit(new Worker(i)));
+		}
+		try {
+			for (Future<Void> worker : workers) {
+				worker.get();
+			}
+		} catch (InterruptedException e) {
+			stop.set(true);
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			stop.set(true);
+			throw new RuntimeException(e.getCause());
+		}
+		if (cutOff || bestGoal.get() == null) {
+			return null;
+		}
+		LinkedList<State> path = new LinkedList<State>();
+		for (State s = bestGoal.get(); s != null; s = s.predecessor) {
+			path.addFirst(s);
+		}
+		return path;
+	}
+
+	/**
+	 * Stops the pool's threads. The search can't be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	private int owner(State s) {
+		long key = s.key();
+		return (Zobrist.fold(key) & 0x7FFFFFFF) % threads;
+	}
+
+	private void post(State s) {
+		int to = owner(s);
+		inFlight.incrementAndGet();
+		inboxes.get(to).add(s);
+		if (idle.get(to) == 1) {
+			Thread owner = running.get(to);
+			if (owner != null) {
+				LockSupport.unpark(owner);
+			}
+		}
+	}
+
+	private int priority(State s) {
+		return s.cost + s.estimate(goalX, goalY);
+	}
+
+	private class Worker implements Callable<Void> {
+
+		private int id;
+		private OpenList open = new OpenList();
+		private HashMap<State, Integer> best = new HashMap<State, Integer>(); // cheapest cost each owned State was reached at
+
+		Worker(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public Void call() {
+			running.set(id, Thread.currentThread());
+			long park = 1000;
+			while (!stop.get()) {
+				boolean worked = false;
+				State received;
+				while ((received = inboxes.get(id).poll()) != null) {
+					idle.set(id, 0);
+					activity.incrementAndGet();
+					receive(received);
+					inFlight.decrementAndGet();
+					worked = true;
+				}
+				if (!open.isEmpty() && open.peek().fcost < incumbent.get()) {
+					idle.set(id, 0);
+					activity.incrementAndGet();
+					expand(open.poll());
+					worked = true;
+				}
+				if (worked) {
+					park = 1000;
+				} else {
+					idle.set(id, 1);
+					if (isFinished()) {
+						stop.set(true);
+					} else if (inboxes.get(id).isEmpty()) {
+						LockSupport.parkNanos(this, park);
+						park = Math.min(park * 2, MAX_PARK_NANOS);
+					}
+				}
+			}
+			running.set(id, null);
+			return null;
+		}
+
+		private boolean isFinished() {
+			long before = activity.get();
+			for (int i = 0; i < threads; ++i) {
+				if (idle.get(i) == 0) {
+					return false;
+				}
+			}
+			return inFlight.get() == 0 && activity.get() == before;
+		}
+
+		// a State we own reached by some worker, keep it if it is the cheapest way there yet
+		private void receive(State s) {
+			Integer known = best.get(s);
+			if (known != null && known <= s.cost) {
+				return;
+			}
+			best.put(s, s.cost);
+			State queued = open.get(s);
+			if (queued != null) {
+				queued.cost = s.cost;
+				queued.move = s.move;
+				queued.predecessor = s.predecessor;
+				queued.fcost = priority(queued);
+				open.decreaseKey(queued);
+				return;
+			}
+			if (reached.incrementAndGet() > maxNodes) {
+				cutOff = true;
+				stop.set(true);
+				return;
+			}
+			s.fcost = priority(s);
+			open.add(s);
+		}
+
+		private void expand(State current) {
+			if (current.x == goalX && current.y == goalY) {
+				int cost = current.cost;
+				for (State known = bestGoal.get(); known == null || cost < known.cost; known = bestGoal.get()) {
+					if (bestGoal.compareAndSet(known, current)) {
+						break;
+					}
+				}
+				for (int known = incumbent.get(); cost < known; known = incumbent.get()) {
+					if (incumbent.compareAndSet(known, cost)) {
+						break;
+					}
+				}
+				return;
+			}
+			expanded.incrementAndGet();
+			for (State neighbour : current.getNeighbours(true)) {
+				neighbour.cost = current.cost + neighbour.stepCost(current);
+				neighbour.predecessor = current;
+				if (neighbour.cost + neighbour.estimate(goalX, goalY) >= incumbent.get()) {
+					continue;
+				}
+				if (owner(neighbour) == id) {
+					receive(neighbour);
+				} else {
+					post(neighbour);
+				}
+			}
+		}
+	}
+}
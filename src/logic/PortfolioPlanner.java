@@ -0,0 +1,218 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import model.Inventory;
+import model.State;
+import model.World;
+
+/**
+ * Races several planning strategies against each other and takes the first plan any of them finds.
+ *
+ * Which planner does best depends a lot on the map: open floor suits Jump Point Search, long trips
+ * with an axe or key suit the bidirectional search, and maps full of items either the anytime A* or,
+ * when that drowns in inventory combinations, a greedy best-first search. Each strategy gets its own
+ * thread and copies of the world and inventory, so they can't see each other's (or the agent's)
+ * changes. As soon as one returns a plan the others are cancelled (interrupted). Wins and the time
+ * each strategy took are counted, to see which ones earn their place.
+ */
+public class PortfolioPlanner {
+
+	private List<IPlanStrategy> strategies;
+	private ExecutorService executor;
+
+	// statistics, by strategy
+	private int [] runs;
+	private int [] wins;
+	private long [] winNanos; // total time taken to win
+
+	public PortfolioPlanner(List<IPlanStrategy> strategies) {
+		this.strategies = new ArrayList<IPlanStrategy>(strategies);
+		this.runs = new int[strategies.size()];
+		this.wins = new int[strategies.size()];
+		this.winNanos = new long[strategies.size()];
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "planner");
+				t.setDaemon(true); // don't keep the agent alive
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * The strategies the agent races by default: Jump Point Search, bidirectional search,
+	 * anytime A* and greedy best-first.
+	 */
+	public static List<IPlanStrategy> defaultStrategies(final double startWeight, final double weightStep, final int maxNodes) {
+		List<IPlanStrategy> strategies = new ArrayList<IPlanStrategy>();
+		strategies.add(new IPlanStrategy() {
+			public String getName() {
+				return "jump points";
+			}
+			public List<State> plan(World w, Inventory inventory, int goalX, int goalY, int startX, int startY, int facing, int move, long deadline) {
+				return new JumpPointSearch(w).search(goalX, goalY, startX, startY, facing, inventory, deadline);
+			}
+		});
+		strategies.add(new IPlanStrategy() {
+			public String getName() {
+				return "bidirectional";
+			}
+			public List<State> plan(World w, Inventory inventory, int goalX, int goalY, int startX, int startY, int facing, int move, long deadline) {
+				return new BidirectionalSearch(w).search(goalX, goalY, startX, startY, facing, inventory, deadline);
+			}
+		});
+		strategies.add(new IPlanStrategy() {
+			public String getName() {
+				return "anytime A*";
+			}
+			public List<State> plan(World w, Inventory inventory, int goalX, int goalY, int startX, int startY, int facing, int move, long deadline) {
+				State initial = new State(w, inventory, startX, startY);
+				initial.move = move;
+				initial.facing = facing;
+				return new AnytimeAStar(w, startWeight, weightStep).search(initial, goalX, goalY, deadline, maxNodes);
+			}
+		});
+		strategies.add(new IPlanStrategy() {
+			public String getName() {
+				return "greedy";
+			}
+			public List<State> plan(World w, Inventory inventory, int goalX, int goalY, int startX, int startY, int facing, int move, long deadline) {
+				return greedy(w, inventory, goalX, goalY, startX, startY, facing, move, deadline);
+			}
+		});
+		return strategies;
+	}
+
+	/**
+	 * Races the strategies on snapshots of the given world and inventory.
+	 *
+	 * @param move - moves made so far, for the start State
+	 * @param deadline - System.nanoTime() by which to give up waiting
+	 * @return - the first plan found, or null if none was found by the deadline
+	 */
+	public List<State> plan(World w, Inventory inventory, final int goalX, final int goalY,
+			final int startX, final int startY, final int facing, final int move, final long deadline) {
+		final World snapshot = w.snapshot();
+		final long started = System.nanoTime();
+		CompletionService<Integer> race = new ExecutorCompletionService<Integer>(executor);
+		List<Future<Integer>> running = new ArrayList<Future<Integer>>();
+		final List<List<State>> plans = new ArrayList<List<State>>();
+		for (int i = 0; i < strategies.size(); ++i) {
+			plans.add(null);
+		}
+		for (int i = 0; i < strategies.size(); ++i) {
+			final int index = i;
+			final Inventory items = new Inventory(inventory);
+			runs[i]++;
+			running.add(race.submit(new Callable<Integer>() {
+				public Integer call() {
+					List<State> plan = strategies.get(index).plan(snapshot, items, goalX, goalY, startX, startY, facing, move, deadline);
+					synchronized (plans) {
+						plans.set(index, plan);
+					}
+					return index;
+				}
+			}));
+		}
+		List<State> result = null;
+		try {
+			for (int done = 0; done < strategies.size() && result == null; ++done) {
+				Future<Integer> finished = race.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				if (finished == null) {
+					break; // out of time
+				}
+				int index;
+				try {
+					index = finished.get();
+				} catch (ExecutionException e) {
+					System.err.println("Planner " + strategies.get(running.indexOf(finished)).getName() + " failed: " + e.getCause());
+					continue;
+				}
+				synchronized (plans) {
+					result = plans.get(index);
+				}
+				if (result != null) {
+					wins[index]++;
+					winNanos[index] += System.nanoTime() - started;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Future<Integer> f : running) {
+			f.cancel(true);
+		}
+		return result;
+	}
+
+	/**
+	 * Stops the strategy threads.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * One line per strategy: how often it ran, won, and how long its wins took on average.
+	 */
+	public String getStatistics() {
+		String res = "";
+		for (int i = 0; i < strategies.size(); ++i) {
+			res += strategies.get(i).getName() + ": " + wins[i] + "/" + runs[i] + " wins";
+			if (wins[i] > 0) {
+				res += ", " + (winNanos[i] / wins[i] / 1000) + "us per win";
+			}
+			res += "\n";
+		}
+		return res;
+	}
+
+	/**
+	 * Greedy best-first search over plan States: always expands the State closest to the goal,
+	 * which finds some plan fast but not a cheap one.
+	 */
+	static List<State> greedy(World w, Inventory inventory, int goalX, int goalY, int startX, int startY, int facing, int move, long deadline) {
+		OpenList open = new OpenList();
+		HashSet<State> seen = new HashSet<State>();
+		State initial = new State(w, inventory, startX, startY);
+		initial.move = move;
+		initial.facing = facing;
+		initial.fcost = initial.estimate(goalX, goalY);
+		open.add(initial);
+		seen.add(initial);
+		while (!open.isEmpty()) {
+			if (System.nanoTime() > deadline || Thread.currentThread().isInterrupted()) {
+				return null;
+			}
+			State current = open.poll();
+			if (current.x == goalX && current.y == goalY) {
+				ArrayList<State> path = new ArrayList<State>();
+				for (State s = current; s != null; s = s.predecessor) {
+					path.add(0, s);
+				}
+				return path;
+			}
+			for (State neighbour : current.getNeighbours(true)) {
+				if (seen.add(neighbour)) {
+					neighbour.predecessor = current;
+					neighbour.fcost = neighbour.estimate(goalX, goalY);
+					open.add(neighbour);
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,418 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import model.Inventory;
+import model.State;
+import model.World;
+
+/**
+ * Plans with items on an abstraction of the map instead of cell by cell.
+ *
+ * The known map is split into regions: connected areas of floor and items that can be walked
+ * without using anything. Trees, doors and walls that separate two or more regions are the edges
+ * between them. The item plan (where to pick up axes, keys and dynamite, which obstacles to get
+ * through and with what) is searched on this small graph, where a state is a region, what we hold
+ * and which items we have picked up and obstacles we have broken. Items are picked up one at a time,
+ * so a plan can take the key from a region and leave the rest. The plan is then refined into cells
+ * by a breadth-first search inside each region it passes through, from one waypoint (item, obstacle,
+ * goal) to the next.
+ *
+ * The regions are kept until a cell of the world changes.
+ *
+ * Costs on the abstract graph are Manhattan distances between waypoints, so plans are not the
+ * cheapest the flat A* would find, but the search no longer grows with the size of the map.
+ * Obstacles more than one cell thick are not edges, so when the goal can only be reached through
+ * one the planner finds nothing and the flat search has to be used.
+ */
+public class RegionPlanner {
+
+	private static final int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
+
+	private static final int NO_REGION = -1;
+
+	private World w;
+
+	private int [] region; // region of each cell, NO_REGION for anything that isn't floor or an item
+	private List<Integer> itemCells; // cells holding an axe, key or dynamite, by item id
+	private List<List<Integer>> items; // item ids, by region
+	private List<Edge> edges;
+	private List<List<Edge>> edgesOf; // by region
+	private int builtVersion, builtEdits; // world the regions were worked out for
+	private boolean built;
+
+	private int expanded; // abstract states expanded by the last plan
+	private int peakOpen; // most abstract states queued at once in the last plan
+
+	private static class Edge {
+		int id;
+		int cell;
+		int flags; // World.FLAGS of the obstacle
+		int [] regions;
+	}
+
+	private static class Node implements Comparable<Node> {
+		int region;
+		int cell; // where we are: the start, the last item picked up or the obstacle we came through
+		int axes, keys, dynamite;
+		BitSet taken; // item ids picked up, shared with the parent unless this node picked one up
+		BitSet broken; // edge ids broken through, shared like taken
+		int cost;
+		Node parent;
+		Edge via; // edge crossed to get here, null if an item was picked up
+
+		@Override
+		public int compareTo(Node n) {
+			return cost - n.cost;
+		}
+
+		Key key() {
+			return new Key(region, axes > 0, keys > 0, dynamite, taken, broken);
+		}
+	}
+
+	// what makes two abstract states the same: how many axes or keys we hold past the first doesn't matter
+	private static class Key {
+		final int region;
+		final boolean axe, key;
+		final int dynamite;
+		final BitSet taken, broken;
+
+		Key(int region, boolean axe, boolean key, int dynamite, BitSet taken, BitSet broken) {
+			this.region = region;
+			this.axe = axe;
+			this.key = key;
+			this.dynamite = dynamite;
+			this.taken = taken;
+			this.broken = broken;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return region == k.region && axe == k.axe && key == k.key && dynamite == k.dynamite
+					&& taken.equals(k.taken) && broken.equals(k.broken);
+		}
+
+		@Override
+		public int hashCode() {
+			int h = region;
+			h = h * 31 + (axe ? 1 : 0);
+			h = h * 31 + (key ? 1 : 0);
+			h = h * 31 + dynamite;
+			h = h * 31 + taken.hashCode();
+			return h * 31 + broken.hashCode();
+		}
+	}
+
+	public RegionPlanner(World w) {
+		this.w = w;
+	}
+
+	/**
+	 * Returns how many abstract states the last plan expanded.
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * Returns the most abstract states the last plan had queued at once.
+	 */
+	public int getPeakOpen() {
+		return peakOpen;
+	}
+
+	/**
+	 * Plans a way from the given cell to the goal cell, picking up and using items as needed.
+	 *
+	 * @return - every cell of the path, starting with our own, or null if no plan was found
+	 */
+	public List<State> plan(int goalX, int goalY, int startX, int startY, Inventory inventory) {
+		build();
+		expanded = 0;
+		peakOpen = 0;
+		int start = w.index(startX, startY);
+		int goal = w.index(goalX, goalY);
+		if (region[start] == NO_REGION || region[goal] == NO_REGION) {
+			return null;
+		}
+
+		PriorityQueue<Node> open = new PriorityQueue<Node>();
+		HashMap<Key, Integer> best = new HashMap<Key, Integer>();
+		Node first = new Node();
+		first.region = region[start];
+		first.cell = start;
+		first.axes = inventory.get('a');
+		first.keys = inventory.get('k');
+		first.dynamite = inventory.get('d');
+		first.taken = new BitSet();
+		first.broken = new BitSet();
+		first.cost = 0;
+		open.add(first);
+		best.put(first.key(), 0);
+
+		while (!open.isEmpty()) {
+			peakOpen = Math.max(peakOpen, open.size());
+			Node n = open.poll();
+			Integer known = best.get(n.key());
+			if (known != null && known < n.cost) {
+				continue; // reached more cheaply since
+			}
+			expanded++;
+			if (n.region == region[goal]) {
+				return refine(n, goal, inventory);
+			}
+			// pick up one of the items still in this region
+			for (int item : items.get(n.region)) {
+				if (n.taken.get(item)) {
+					continue;
+				}
+				int cell = itemCells.get(item);
+				Node next = copy(n);
+				next.taken = (BitSet) n.taken.clone();
+				next.taken.set(item);
+				next.cost += distance(n.cell, cell);
+				next.cell = cell;
+				switch (w.type(w.indexX(cell), w.indexY(cell))) {
+				case World.AXE:
+					next.axes++;
+					break;
+				case World.KEY:
+					next.keys++;
+					break;
+				case World.DYNAMITE:
+					next.dynamite++;
+					break;
+				}
+				push(open, best, next);
+			}
+			// get through an obstacle into a neighbouring region
+			for (Edge e : edgesOf.get(n.region)) {
+				boolean broken = n.broken.get(e.id);
+				int dynamite = n.dynamite;
+				if (!broken) {
+					if (((e.flags & World.CHOPPABLE) != 0 && n.axes > 0) || ((e.flags & World.OPENABLE) != 0 && n.keys > 0)) {
+						// chop or open, nothing used up
+					} else if (dynamite > 0) {
+						dynamite--;
+					} else {
+						continue;
+					}
+				}
+				for (int r : e.regions) {
+					if (r == n.region) {
+						continue;
+					}
+					Node next = copy(n);
+					next.region = r;
+					next.dynamite = dynamite;
+					if (!broken) {
+						next.broken = (BitSet) n.broken.clone();
+						next.broken.set(e.id);
+					}
+					next.cost += distance(n.cell, e.cell) + (broken ? 0 : 1);
+					next.cell = e.cell;
+					next.via = e;
+					push(open, best, next);
+				}
+			}
+		}
+		return null;
+	}
+
+	private Node copy(Node n) {
+		Node next = new Node();
+		next.region = n.region;
+		next.cell = n.cell;
+		next.axes = n.axes;
+		next.keys = n.keys;
+		next.dynamite = n.dynamite;
+		next.taken = n.taken;
+		next.broken = n.broken;
+		next.cost = n.cost;
+		next.parent = n;
+		next.via = null;
+		return next;
+	}
+
+	private void push(PriorityQueue<Node> open, HashMap<Key, Integer> best, Node n) {
+		Key key = n.key();
+		Integer known = best.get(key);
+		if (known == null || n.cost < known) {
+			best.put(key, n.cost);
+			open.add(n);
+		}
+	}
+
+	private int distance(int a, int b) {
+		return Math.abs(w.indexX(a) - w.indexX(b)) + Math.abs(w.indexY(a) - w.indexY(b));
+	}
+
+	/**
+	 * Turns the abstract plan ending in the given node into cells: a breadth-first path inside each
+	 * region from waypoint to waypoint.
+	 */
+	private List<State> refine(Node last, int goal, Inventory inventory) {
+		LinkedList<Node> plan = new LinkedList<Node>();
+		for (Node n = last; n != null; n = n.parent) {
+			plan.addFirst(n);
+		}
+		LinkedList<State> path = new LinkedList<State>();
+		Node first = plan.getFirst();
+		path.add(new State(w, inventory, w.indexX(first.cell), w.indexY(first.cell)));
+		int at = first.cell;
+		Node prev = null;
+		for (Node n : plan) {
+			if (prev != null) {
+				if (n.via != null) {
+					at = walk(path, at, n.via.cell, prev.region, inventory);
+				} else {
+					at = walk(path, at, n.cell, n.region, inventory); // to the item picked up
+				}
+				if (at < 0) {
+					return null;
+				}
+			}
+			prev = n;
+		}
+		at = walk(path, at, goal, last.region, inventory);
+		return at < 0 ? null : path;
+	}
+
+	// appends a shortest path from one cell to another through the given region, returning where it ends (-1 if stuck)
+	private int walk(List<State> path, int from, int to, int inRegion, Inventory inventory) {
+		if (from == to) {
+			return to;
+		}
+		HashMap<Integer, Integer> parent = new HashMap<Integer, Integer>();
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		parent.put(from, from);
+		queue.add(from);
+		while (!queue.isEmpty() && !parent.containsKey(to)) {
+			int cell = queue.poll();
+			int x = w.indexX(cell);
+			int y = w.indexY(cell);
+			for (int [] v : moveVectors) {
+				int nx = x + v[0];
+				int ny = y + v[1];
+				if (!w.inBounds(nx, ny)) {
+					continue;
+				}
+				int next = w.index(nx, ny);
+				if ((region[next] == inRegion || next == to) && !parent.containsKey(next)) {
+					parent.put(next, cell);
+					queue.add(next);
+				}
+			}
+		}
+		if (!parent.containsKey(to)) {
+			return -1;
+		}
+		LinkedList<State> leg = new LinkedList<State>();
+		for (int cell = to; cell != from; cell = parent.get(cell)) {
+			leg.addFirst(new State(w, inventory, w.indexX(cell), w.indexY(cell)));
+		}
+		path.addAll(leg);
+		return to;
+	}
+
+	/**
+	 * Splits the explored part of the map into regions and finds the obstacles between them,
+	 * unless the world hasn't changed since they were last worked out.
+	 */
+	private void build() {
+		if (built && builtVersion == w.getVersion() && builtEdits == w.getEdits()) {
+			return;
+		}
+		built = true;
+		builtVersion = w.getVersion();
+		builtEdits = w.getEdits();
+		region = new int[w.cellCount()];
+		Arrays.fill(region, NO_REGION);
+		itemCells = new ArrayList<Integer>();
+		items = new ArrayList<List<Integer>>();
+		edges = new ArrayList<Edge>();
+		edgesOf = new ArrayList<List<Edge>>();
+		int [] queue = new int[w.cellCount()];
+		for (int y = w.miny; y <= w.maxy; ++y) {
+			for (int x = w.minx; x <= w.maxx; ++x) {
+				int cell = w.index(x, y);
+				if (region[cell] != NO_REGION || (w.flags(x, y) & World.WALKABLE) == 0) {
+					continue;
+				}
+				// flood fill a new region
+				int id = items.size();
+				List<Integer> held = new ArrayList<Integer>();
+				items.add(held);
+				edgesOf.add(new ArrayList<Edge>());
+				int head = 0, tail = 0;
+				region[cell] = id;
+				queue[tail++] = cell;
+				while (head < tail) {
+					int c = queue[head++];
+					int cx = w.indexX(c);
+					int cy = w.indexY(c);
+					if ((w.flags(cx, cy) & World.TOOL) != 0) {
+						held.add(itemCells.size());
+						itemCells.add(c);
+					}
+					for (int [] v : moveVectors) {
+						int nx = cx + v[0];
+						int ny = cy + v[1];
+						if (w.inBounds(nx, ny) && region[w.index(nx, ny)] == NO_REGION && (w.flags(nx, ny) & World.WALKABLE) != 0) {
+							region[w.index(nx, ny)] = id;
+							queue[tail++] = w.index(nx, ny);
+						}
+					}
+				}
+			}
+		}
+		for (int y = w.miny; y <= w.maxy; ++y) {
+			for (int x = w.minx; x <= w.maxx; ++x) {
+				int flags = w.flags(x, y);
+				if ((flags & (World.CHOPPABLE | World.OPENABLE | World.BLASTABLE)) == 0) {
+					continue;
+				}
+				int [] touching = new int[4];
+				int count = 0;
+				for (int [] v : moveVectors) {
+					int nx = x + v[0];
+					int ny = y + v[1];
+					if (!w.inBounds(nx, ny)) {
+						continue;
+					}
+					int r = region[w.index(nx, ny)];
+					boolean seen = r == NO_REGION;
+					for (int i = 0; i < count && !seen; ++i) {
+						seen = touching[i] == r;
+					}
+					if (!seen) {
+						touching[count++] = r;
+					}
+				}
+				if (count < 2) {
+					continue; // doesn't lead anywhere new
+				}
+				Edge e = new Edge();
+				e.id = edges.size();
+				e.cell = w.index(x, y);
+				e.flags = flags;
+				e.regions = Arrays.copyOf(touching, count);
+				edges.add(e);
+				for (int r : e.regions) {
+					edgesOf.get(r).add(e);
+				}
+			}
+		}
+	}
+}
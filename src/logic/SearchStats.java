@@ -0,0 +1,143 @@
+package logic;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metrics of every plan search the agent ran in a game: what searched, for which leg, how much it
+ * expanded and held, how long it took and how much it allocated. Records can be queried, and
+ * summary() totals them by kind of search to show which planners and legs the time goes on.
+ *
+ * Counts a search doesn't have (e.g. the open list of the depth-first IDA*) are recorded as -1.
+ */
+public class SearchStats {
+
+	/**
+	 * One search call.
+	 */
+	public static class Record {
+		public String kind; // which planner
+		public int turn; // turn it ran on
+		public int fromX, fromY, goalX, goalY;
+		public boolean found; // whether it returned a plan
+		public long expanded = -1; // states (or jump points, regions...) expanded
+		public long peakOpen = -1; // most states queued at once
+		public long closed = -1; // states reached / kept when it finished
+		public long pruned = -1; // states dropped as dominated
+		public long nanos; // wall time
+		public long allocatedBytes = -1; // allocated by this thread during the search, -1 if the JVM can't tell
+
+		private long startNanos;
+		private long startBytes;
+
+		@Override
+		public String toString() {
+			return kind + " turn " + turn + " [" + fromX + "," + fromY + "] -> [" + goalX + "," + goalY + "] "
+					+ (found ? "found" : "none") + ", expanded " + expanded + ", peak open " + peakOpen
+					+ ", closed " + closed + ", pruned " + pruned + ", " + (nanos / 1000) + "us, "
+					+ allocatedBytes + " bytes";
+		}
+	}
+
+	private List<Record> records;
+
+	public SearchStats() {
+		records = new ArrayList<Record>();
+	}
+
+	/**
+	 * Starts timing a search. Fill in the counts on the returned record, then pass it to end().
+	 */
+	public Record begin(String kind, int turn, int fromX, int fromY, int goalX, int goalY) {
+		Record r = new Record();
+		r.kind = kind;
+		r.turn = turn;
+		r.fromX = fromX;
+		r.fromY = fromY;
+		r.goalX = goalX;
+		r.goalY = goalY;
+		r.startBytes = allocatedBytes();
+		r.startNanos = System.nanoTime();
+		return r;
+	}
+
+	/**
+	 * Stops timing a search and records it.
+	 */
+	public void end(Record r, boolean found) {
+		r.nanos = System.nanoTime() - r.startNanos;
+		long bytes = allocatedBytes();
+		r.allocatedBytes = (bytes < 0 || r.startBytes < 0) ? -1 : bytes - r.startBytes;
+		r.found = found;
+		records.add(r);
+	}
+
+	/**
+	 * Every search recorded so far, oldest first.
+	 */
+	public List<Record> getRecords() {
+		return Collections.unmodifiableList(records);
+	}
+
+	/**
+	 * The search that took longest so far, or null if there were none.
+	 */
+	public Record getSlowest() {
+		Record slowest = null;
+		for (Record r : records) {
+			if (slowest == null || r.nanos > slowest.nanos) {
+				slowest = r;
+			}
+		}
+		return slowest;
+	}
+
+	/**
+	 * Totals by kind of search: calls, plans found, expansions, largest open list, time and allocation,
+	 * followed by the slowest search.
+	 */
+	public String summary() {
+		Map<String, long []> totals = new LinkedHashMap<String, long []>();
+		for (Record r : records) {
+			long [] t = totals.get(r.kind);
+			if (t == null) {
+				t = new long[6];
+				totals.put(r.kind, t);
+			}
+			t[0]++;
+			t[1] += r.found ? 1 : 0;
+			t[2] += Math.max(0, r.expanded);
+			t[3] = Math.max(t[3], r.peakOpen);
+			t[4] += r.nanos;
+			t[5] += Math.max(0, r.allocatedBytes);
+		}
+		String res = "Searches: " + records.size() + "\n";
+		for (Map.Entry<String, long []> e : totals.entrySet()) {
+			long [] t = e.getValue();
+			res += "  " + e.getKey() + ": " + t[0] + " calls, " + t[1] + " found, " + t[2] + " expanded, peak open "
+					+ t[3] + ", " + (t[4] / 1000000) + "ms, " + (t[5] / 1024) + "KB allocated\n";
+		}
+		Record slowest = getSlowest();
+		if (slowest != null) {
+			res += "  slowest: " + slowest + "\n";
+		}
+		return res;
+	}
+
+	// bytes allocated by the current thread so far, -1 if the JVM doesn't track it
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+			if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+				return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,155 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Node store for the A* planner, keyed on a packed State (see model.PackedState) plus the
+ * interned id of its destroyed cell set.
+ *
+ * Nodes are numbered densely in insertion order and their data lives in parallel primitive
+ * arrays (key, set id, g-cost, parent node, closed flag), so a node costs a few dozen bytes
+ * instead of a State object graph. Lookup is an open-addressing hash table (linear probing)
+ * of node numbers; growing it only rehashes that table, so node numbers and parent links
+ * stay valid for the whole search.
+ */
+public class StateTable {
+
+	public static final int NONE = -1;
+
+	private static final float MAX_LOAD = 0.5f;
+
+	// per node data
+	private long [] keys;
+	private int [] sets;
+	private int [] g;
+	private int [] parent;
+	private boolean [] closed;
+	private int size;
+
+	// hash table of node numbers, NONE marks an empty slot
+	private int [] slots;
+	private int mask;
+
+	public StateTable() {
+		this(1024);
+	}
+
+	public StateTable(int expectedNodes) {
+		int capacity = 16;
+		while (capacity < expectedNodes) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		sets = new int[capacity];
+		g = new int[capacity];
+		parent = new int[capacity];
+		closed = new boolean[capacity];
+		size = 0;
+
+		slots = new int[capacity * 2];
+		Arrays.fill(slots, NONE);
+		mask = slots.length - 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the node for the given key and set id, or NONE if it isn't in the table.
+	 */
+	public int find(long key, int set) {
+		int i = hash(key, set) & mask;
+		int node;
+		while ((node = slots[i]) != NONE) {
+			if (keys[node] == key && sets[node] == set) {
+				return node;
+			}
+			i = (i + 1) & mask;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Adds a node that is not already in the table and returns its number.
+	 */
+	public int add(long key, int set, int cost, int parentNode) {
+		if (size == keys.length) {
+			growNodes();
+		}
+		if (size + 1 > slots.length * MAX_LOAD) {
+			growSlots();
+		}
+		int node = size++;
+		keys[node] = key;
+		sets[node] = set;
+		g[node] = cost;
+		parent[node] = parentNode;
+		closed[node] = false;
+		insertSlot(node);
+		return node;
+	}
+
+	public long key(int node) {
+		return keys[node];
+	}
+
+	public int set(int node) {
+		return sets[node];
+	}
+
+	public int g(int node) {
+		return g[node];
+	}
+
+	public int parent(int node) {
+		return parent[node];
+	}
+
+	public boolean isClosed(int node) {
+		return closed[node];
+	}
+
+	/**
+	 * Records a cheaper way into the given node.
+	 */
+	public void relax(int node, int cost, int parentNode) {
+		g[node] = cost;
+		parent[node] = parentNode;
+	}
+
+	public void close(int node) {
+		closed[node] = true;
+	}
+
+	private void insertSlot(int node) {
+		int i = hash(keys[node], sets[node]) & mask;
+		while (slots[i] != NONE) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = node;
+	}
+
+	private void growNodes() {
+		int capacity = keys.length * 2;
+		keys = Arrays.copyOf(keys, capacity);
+		sets = Arrays.copyOf(sets, capacity);
+		g = Arrays.copyOf(g, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		closed = Arrays.copyOf(closed, capacity);
+	}
+
+	private void growSlots() {
+		slots = new int[slots.length * 2];
+		Arrays.fill(slots, NONE);
+		mask = slots.length - 1;
+		for (int node = 0; node < size; ++node) {
+			insertSlot(node);
+		}
+	}
+
+	private static int hash(long key, int set) {
+		long h = (key ^ ((long) set << 52) ^ set) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
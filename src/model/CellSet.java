@@ -0,0 +1,206 @@
+package model;
+
+/**
+ * Immutable set of map cells, used for the cells a plan State has destroyed (or picked items up from).
+ *
+ * It is a persistent hash trie (5 bits of the cell hash per level, CHAMP layout): adding a cell
+ * copies only the nodes on the path to it, so successors that destroy nothing share their parent's
+ * set outright and successors that do share everything but O(log n) small nodes. The size and hash
+ * code (a Zobrist key, see Zobrist.destroyed) are kept up to date as cells are added, and since the trie
+ * shape only depends on its contents, equality can skip any subtree the two sets share.
+ */
+public class CellSet {
+
+	public static final CellSet EMPTY = new CellSet(Node.EMPTY, 0, 0);
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private final Node root;
+	private final int size;
+	private final long key;
+
+	private CellSet(Node root, int size, long key) {
+		this.root = root;
+		this.size = size;
+		this.key = key;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int x, int y) {
+		int cell = cell(x, y);
+		return root.contains(cell, mix(cell), 0);
+	}
+
+	/**
+	 * Returns a set that also contains the given cell (this set if it already does).
+	 */
+	public CellSet add(int x, int y) {
+		int cell = cell(x, y);
+		Node added = root.add(cell, mix(cell), 0);
+		if (added == root) {
+			return this;
+		}
+		return new CellSet(added, size + 1, key ^ Zobrist.destroyed(x, y));
+	}
+
+	/**
+	 * Zobrist key of the cells in this set
+	 */
+	public long zobrist() {
+		return key;
+	}
+
+	@Override
+	public int hashCode() {
+		return Zobrist.fold(key);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o == null || o.getClass() != getClass()) {
+			return false;
+		}
+		CellSet s = (CellSet) o;
+		return key == s.key && size == s.size && root.equals(s.root);
+	}
+
+	@Override
+	public String toString() {
+		return "CellSet(" + size + ")";
+	}
+
+	// distinct for every cell World allows (coordinates within World.MAX_COORDINATE fit in 16 bits)
+	private static int cell(int x, int y) {
+		return (x & 0xFFFF) | (y << 16);
+	}
+
+	// bijective scramble of the cell number, so the trie is balanced and distinct cells never collide
+	private static int mix(int cell) {
+		int h = cell * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static final class Node {
+
+		static final Node EMPTY = new Node(0, 0, new int[0], new int[0], new Node[0]);
+
+		final int dataMap; // branches that hold a single cell
+		final int nodeMap; // branches that hold a sub-trie
+		final int [] keys;
+		final int [] hashes;
+		final Node [] children;
+
+		Node(int dataMap, int nodeMap, int [] keys, int [] hashes, Node [] children) {
+			this.dataMap = dataMap;
+			this.nodeMap = nodeMap;
+			this.keys = keys;
+			this.hashes = hashes;
+			this.children = children;
+		}
+
+		boolean contains(int key, int h, int shift) {
+			int bit = 1 << ((h >>> shift) & MASK);
+			if ((dataMap & bit) != 0) {
+				return keys[Integer.bitCount(dataMap & (bit - 1))] == key;
+			}
+			if ((nodeMap & bit) != 0) {
+				return children[Integer.bitCount(nodeMap & (bit - 1))].contains(key, h, shift + BITS);
+			}
+			return false;
+		}
+
+		Node add(int key, int h, int shift) {
+			int bit = 1 << ((h >>> shift) & MASK);
+			if ((dataMap & bit) != 0) {
+				int i = Integer.bitCount(dataMap & (bit - 1));
+				if (keys[i] == key) {
+					return this;
+				}
+				// two cells on this branch now, push them both down a level
+				Node child = pair(keys[i], hashes[i], key, h, shift + BITS);
+				int [] newKeys = new int[keys.length - 1];
+				int [] newHashes = new int[hashes.length - 1];
+				System.arraycopy(keys, 0, newKeys, 0, i);
+				System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+				System.arraycopy(hashes, 0, newHashes, 0, i);
+				System.arraycopy(hashes, i + 1, newHashes, i, hashes.length - i - 1);
+				int j = Integer.bitCount(nodeMap & (bit - 1));
+				Node [] newChildren = new Node[children.length + 1];
+				System.arraycopy(children, 0, newChildren, 0, j);
+				newChildren[j] = child;
+				System.arraycopy(children, j, newChildren, j + 1, children.length - j);
+				return new Node(dataMap & ~bit, nodeMap | bit, newKeys, newHashes, newChildren);
+			}
+			if ((nodeMap & bit) != 0) {
+				int j = Integer.bitCount(nodeMap & (bit - 1));
+				Node child = children[j].add(key, h, shift + BITS);
+				if (child == children[j]) {
+					return this;
+				}
+				Node [] newChildren = children.clone();
+				newChildren[j] = child;
+				return new Node(dataMap, nodeMap, keys, hashes, newChildren);
+			}
+			int i = Integer.bitCount(dataMap & (bit - 1));
+			int [] newKeys = new int[keys.length + 1];
+			int [] newHashes = new int[hashes.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, i);
+			newKeys[i] = key;
+			System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+			System.arraycopy(hashes, 0, newHashes, 0, i);
+			newHashes[i] = h;
+			System.arraycopy(hashes, i, newHashes, i + 1, hashes.length - i);
+			return new Node(dataMap | bit, nodeMap, newKeys, newHashes, children);
+		}
+
+		private static Node pair(int k1, int h1, int k2, int h2, int shift) {
+			int b1 = (h1 >>> shift) & MASK;
+			int b2 = (h2 >>> shift) & MASK;
+			if (b1 == b2) {
+				return new Node(0, 1 << b1, new int[0], new int[0], new Node[] {pair(k1, h1, k2, h2, shift + BITS)});
+			}
+			if (b1 < b2) {
+				return new Node((1 << b1) | (1 << b2), 0, new int[] {k1, k2}, new int[] {h1, h2}, new Node[0]);
+			}
+			return new Node((1 << b1) | (1 << b2), 0, new int[] {k2, k1}, new int[] {h2, h1}, new Node[0]);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			Node n = (Node) o;
+			if (dataMap != n.dataMap || nodeMap != n.nodeMap) {
+				return false;
+			}
+			for (int i = 0; i < keys.length; ++i) {
+				if (keys[i] != n.keys[i]) {
+					return false;
+				}
+			}
+			for (int i = 0; i < children.length; ++i) {
+				if (!children[i].equals(n.children[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return dataMap * 31 + nodeMap;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package model;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 
 import logic.Agent;
 
@@ -11,6 +12,7 @@ public class Goal implements Comparable<Goal> {
 	public int y;
 	public char type;
 	private List<State> path;
+	private char [] planned; // contents of each path cell when the path was set
 	public int pos; // position in path on state
 	private int requiredDynamite; // dynamite required to complete this path
 	private int score;
@@ -81,6 +83,91 @@ public class Goal implements Comparable<Goal> {
 	public void setPath(List<State> path) {
 		this.path = path;
 		this.pos = 0;
+		this.planned = null;
+		if (path != null) {
+			planned = new char[path.size()];
+			int i = 0;
+			for (State s : path) {
+				planned[i++] = s.base.cell(s.x, s.y);
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether the rest of the path can still be followed from the given position,
+	 * so there is no need to search for a new one.
+	 * 
+	 * The path is stale if we are not where it expects us to be, or if a cell still ahead on it
+	 * now holds something other than what it held when the path was planned (cells we cleared
+	 * or emptied are fine). The remaining steps are also walked with the given inventory to
+	 * check we still hold what the obstacles ahead need.
+	 * 
+	 * @param w - the latest world
+	 * @param inventory - what we are carrying now
+	 * @param x - our x coordinate
+	 * @param y - our y coordinate
+	 * @return whether the rest of the path is still valid
+	 */
+	public boolean isValid(World w, Inventory inventory, int x, int y) {
+		if (path == null || planned == null || pos >= path.size()) {
+			return false;
+		}
+		State here = path.get(pos);
+		if (here.x != x || here.y != y) {
+			return false;
+		}
+		Inventory items = new Inventory(inventory);
+		CellSet cleared = CellSet.EMPTY;
+		int i = pos;
+		for (ListIterator<State> it = path.listIterator(pos + 1); it.hasNext();) {
+			State s = it.next();
+			char c = w.cell(s.x, s.y);
+			if (c != planned[++i] && c != ' ') {
+				return false;
+			}
+			if (cleared.contains(s.x, s.y)) {
+				continue; // we will have cleared or emptied it further back along the path
+			}
+			if (c != ' ') {
+				cleared = cleared.add(s.x, s.y);
+			}
+			switch (c) {
+			case 'T':
+				if (items.get('a') == 0 && !use(items, 'd')) {
+					return false;
+				}
+				break;
+			case '-':
+				if (items.get('k') == 0 && !use(items, 'd')) {
+					return false;
+				}
+				break;
+			case '*':
+				if (!use(items, 'd')) {
+					return false;
+				}
+				break;
+			case 'a':
+			case 'k':
+			case 'd':
+			case 'g':
+				items.add(c);
+				break;
+			case ' ':
+				break;
+			default:
+				return false; // water or unknown
+			}
+		}
+		return true;
+	}
+	
+	private static boolean use(Inventory items, char item) {
+		if (items.get(item) == 0) {
+			return false;
+		}
+		items.use(item);
+		return true;
 	}
 
 	public int getRequiredDynamite() {
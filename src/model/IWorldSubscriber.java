@@ -0,0 +1,13 @@
+package model;
+
+/**
+ * Interface for any object that subscribes to a World's changes
+ */
+public interface IWorldSubscriber {
+
+	/**
+	 * Called when the world publishes changes (after every update that changed something).
+	 * The change set is reused, so it is only good until the next update.
+	 */
+	void onWorldChanged(World w, WorldChanges changes);
+}
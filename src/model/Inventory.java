@@ -6,12 +6,16 @@ public class Inventory {
 	// yay encapsulation
 	private HashMap<Character, Integer> inventory;
 	
+	private long key; // Zobrist key of the item counts, kept up to date by add/use
+	
 	public Inventory() {
 		inventory = new HashMap<Character, Integer>();
+		key = 0;
 	}
 	
 	public Inventory(Inventory src) {
 		inventory = new HashMap<Character, Integer>(src.inventory);
+		key = src.key;
 	}
 	
 	public int get(char c) {
@@ -23,8 +27,10 @@ public class Inventory {
 		Integer amt = inventory.get(c);
 		if (amt == null) {
 			inventory.put(c, 1);
+			key ^= Zobrist.item(c, 1);
 		} else {
 			inventory.put(c, amt.intValue() + 1);
+			key ^= Zobrist.item(c, amt.intValue()) ^ Zobrist.item(c, amt.intValue() + 1);
 		}
 	}
 	
@@ -32,19 +38,41 @@ public class Inventory {
 		Integer amt = inventory.get(c);
 		if (amt != null) {
 			inventory.put(c, amt.intValue() - 1);
+			key ^= Zobrist.item(c, amt.intValue()) ^ Zobrist.item(c, amt.intValue() - 1);
 		}
 	}
 	
+	/**
+	 * Zobrist key of this inventory (see Zobrist.item)
+	 */
+	public long zobrist() {
+		return key;
+	}
+	
 	@Override
 	public int hashCode() {
-		return inventory.hashCode();
+		return Zobrist.fold(key);
 	}
 	
 	@Override
 	public boolean equals(Object o) {
 		if (o.getClass().equals(this.getClass())) {
 			Inventory i = (Inventory)o;
-			return inventory.equals(i.inventory);
+			if (key != i.key) {
+				return false;
+			}
+			// keys match, confirm the counts (an item used up counts the same as one never held)
+			for (Character c : inventory.keySet()) {
+				if (get(c) != i.get(c)) {
+					return false;
+				}
+			}
+			for (Character c : i.inventory.keySet()) {
+				if (get(c) != i.get(c)) {
+					return false;
+				}
+			}
+			return true;
 		}
 		return false;
 	}
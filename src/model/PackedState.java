@@ -0,0 +1,132 @@
+package model;
+
+/**
+ * Packs the scalar part of a plan State (position, facing and item counts) into a single long.
+ * The destroyed cell set is not part of the packed value; the planner interns it separately
+ * and keys its tables on (packed value, interned set id).
+ *
+ * Layout, from the least significant bit:
+ *   x        16 bits, signed (the map grows in every direction from the start, World keeps
+ *   y        16 bits, signed  coordinates within World.MAX_COORDINATE so they fit)
+ *   facing    2 bits
+ *   axes      4 bits
+ *   keys      4 bits
+ *   dynamite  8 bits
+ *   gold      2 bits
+ *
+ * Item counts are clamped to what their field holds (negative counts to none). Up to 15 axes and keys,
+ * 255 dynamite and 3 gold nothing is lost. Past that, states that differ only in how many they hold
+ * over the limit pack the same, so StateTable takes them for one state and pathFind rebuilds the
+ * inventory with the clamped count.
+ */
+public class PackedState {
+
+	private static final int X_SHIFT = 0;
+	private static final int Y_SHIFT = 16;
+	private static final int FACING_SHIFT = 32;
+	private static final int AXE_SHIFT = 34;
+	private static final int KEY_SHIFT = 38;
+	private static final int DYNAMITE_SHIFT = 42;
+	private static final int GOLD_SHIFT = 50;
+
+	private static final int COORD_MASK = 0xFFFF;
+	private static final int FACING_MASK = 0x3;
+	private static final int AXE_MASK = 0xF;
+	private static final int KEY_MASK = 0xF;
+	private static final int DYNAMITE_MASK = 0xFF;
+	private static final int GOLD_MASK = 0x3;
+
+	// items in the order they are packed
+	public static final char [] ITEMS = {'a', 'k', 'd', 'g'};
+
+	private PackedState() {
+	}
+
+	public static long pack(int x, int y, int facing, Inventory inventory) {
+		return coordinate(x, X_SHIFT)
+				| coordinate(y, Y_SHIFT)
+				| ((long) (facing & FACING_MASK) << FACING_SHIFT)
+				| count(inventory.get('a'), AXE_MASK, AXE_SHIFT)
+				| count(inventory.get('k'), KEY_MASK, KEY_SHIFT)
+				| count(inventory.get('d'), DYNAMITE_MASK, DYNAMITE_SHIFT)
+				| count(inventory.get('g'), GOLD_MASK, GOLD_SHIFT);
+	}
+
+	/**
+	 * Packs a plan State. Untracked facing is packed as east.
+	 */
+	public static long pack(State s) {
+		return pack(s.x, s.y, s.facing == State.NO_FACING ? 0 : s.facing, s.inventory);
+	}
+
+	public static int x(long packed) {
+		return (short) (packed >>> X_SHIFT);
+	}
+
+	public static int y(long packed) {
+		return (short) (packed >>> Y_SHIFT);
+	}
+
+	public static int facing(long packed) {
+		return (int) (packed >>> FACING_SHIFT) & FACING_MASK;
+	}
+
+	/**
+	 * Returns the count of the given item held in a packed state.
+	 */
+	public static int items(long packed, char item) {
+		switch (item) {
+		case 'a':
+			return (int) (packed >>> AXE_SHIFT) & AXE_MASK;
+		case 'k':
+			return (int) (packed >>> KEY_SHIFT) & KEY_MASK;
+		case 'd':
+			return (int) (packed >>> DYNAMITE_SHIFT) & DYNAMITE_MASK;
+		case 'g':
+			return (int) (packed >>> GOLD_SHIFT) & GOLD_MASK;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Rebuilds the inventory held in a packed state.
+	 */
+	public static Inventory inventory(long packed) {
+		Inventory inventory = new Inventory();
+		for (char item : ITEMS) {
+			for (int i = items(packed, item); i > 0; --i) {
+				inventory.add(item);
+			}
+		}
+		return inventory;
+	}
+
+	/**
+	 * Returns the packed state with its item counts cleared, i.e. just where it is and which way it faces.
+	 */
+	public static long place(long packed) {
+		return packed & ((1L << AXE_SHIFT) - 1);
+	}
+
+	/**
+	 * Returns whether the first packed state holds at least as many of every item as the second.
+	 */
+	public static boolean holdsAtLeast(long a, long b) {
+		for (char item : ITEMS) {
+			if (items(a, item) < items(b, item)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long coordinate(int value, int shift) {
+		return ((long) value & COORD_MASK) << shift;
+	}
+
+	// an item count, clamped to 0..mask so it never spills into the next field
+	private static long count(int value, int mask, int shift) {
+		return ((long) (Math.max(0, Math.min(value, mask)) & mask)) << shift;
+	}
+}
@@ -1,8 +1,8 @@
 package model;
 
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import logic.Agent;
 
@@ -18,26 +18,90 @@ public class State implements Comparable {
 	
 	public State predecessor;
 	public int fromDirection; // direction we came from
+	public int facing = NO_FACING; // direction faced, only tracked when planning in actions (participates in hashcode/equals)
 	
 	public int cost, fcost;
 	public int move; // move counter
+	public int heapIndex = -1; // slot in the A* open list, -1 when not queued
+	public int node = -1; // node number in the A* StateTable, -1 when not recorded
 	
-	public HashSet<Position> destroyed; // participates in hashcode/equalsdestroyed cells in this state
+	public CellSet destroyed; // participates in hashcode/equals destroyed cells in this state, shared between states
 	
 	private static final int [][] moveVectors = {{1,0},{0,-1},{-1,0},{0,1}}; // {{x,y} E N W S}
+	private static final int EAST = 0;
+	private static final int NORTH = 1;
+	private static final int WEST = 2;
+	private static final int SOUTH = 3;
+	
+	public static final int NO_FACING = -1;
+	
+	// times a search reached Agent.MAX_MOVES and stopped branching, over every thread
+	public static final AtomicInteger branchLimitHits = new AtomicInteger();
 	
 	public State(World base, Inventory inventory, int x, int y) {
 		this.base = base;
 		this.inventory = inventory;
 		this.x = x;
 		this.y = y;
-		this.destroyed = new HashSet<Position>();
+		this.destroyed = CellSet.EMPTY;
 	}
 	
 	public int cost(State from) {
 		return (int) Math.sqrt(Math.pow(this.x - from.x, 2) + Math.pow(this.y - from.y, 2));
 	}
 	
+	/**
+	 * Cost of stepping into this state from the given (neighbouring) state.
+	 * When facing is tracked this is the number of actions the server has to be sent: the turns
+	 * to face this cell, a chop/open/blast if there is an obstacle in it, and the forward move.
+	 * Otherwise it is the distance between the cells.
+	 */
+	public int stepCost(State from) {
+		if (facing == NO_FACING || from.facing == NO_FACING) {
+			return cost(from);
+		}
+		int actions = turnsBetween(from.facing, facing) + 1;
+		if ((World.FLAGS[from.type(x, y)] & (World.CHOPPABLE | World.OPENABLE | World.BLASTABLE)) != 0) {
+			actions++; // chop, open or blast first
+		}
+		return actions;
+	}
+	
+	/**
+	 * Lower bound on the cost of getting from this state to the given cell.
+	 * When facing is tracked this is the number of actions needed on an empty map: one forward move
+	 * per cell of Manhattan distance, plus the fewest turns that leave us facing every direction we
+	 * still have to move in. Being the exact cost of a relaxed problem it is consistent as well as
+	 * admissible. Otherwise it is the straight line distance.
+	 */
+	public int estimate(int goalX, int goalY) {
+		int dx = goalX - x;
+		int dy = goalY - y;
+		if (facing == NO_FACING) {
+			return (int) Math.sqrt(dx * dx + dy * dy);
+		}
+		int turns = 0;
+		int xDir = dx > 0 ? EAST : WEST;
+		int yDir = dy > 0 ? SOUTH : NORTH;
+		if (dx != 0 && dy != 0) {
+			// face one of the two directions, then a single turn to the other
+			turns = (facing == xDir || facing == yDir) ? 1 : 2;
+		} else if (dx != 0) {
+			turns = turnsBetween(facing, xDir);
+		} else if (dy != 0) {
+			turns = turnsBetween(facing, yDir);
+		}
+		return Math.abs(dx) + Math.abs(dy) + turns;
+	}
+	
+	/**
+	 * Returns the number of quarter turns (L or R) it takes to go from facing one direction to another.
+	 */
+	public static int turnsBetween(int from, int to) {
+		int d = (to - from + 4) % 4;
+		return d == 2 ? 2 : (d == 0 ? 0 : 1);
+	}
+	
 
 	/**
 	 * Gets all the neighbours for this state.
@@ -47,42 +111,46 @@ public class State implements Comparable {
 	 * @return
 	 */
 	public List<State> getNeighbours(boolean useItems) {
-		int nx, ny;
+		int nx, ny, flags;
 		boolean isInteresting, isBreakable;
-		char c;
+		byte t;
 		Inventory newInventory;
 		State next;
 		List<State> neighbours = new LinkedList<State>();
 		
 		if (move == Agent.MAX_MOVES) { // no more branching...
-			System.err.println("BRANCH NO MORE!!!!");
+			branchLimitHits.incrementAndGet();
 			return neighbours;
 		}
 		
 		//System.out.println("getNeighbours: " + this);
-		for (int [] vector : moveVectors) {
+		for (int dir = 0; dir < moveVectors.length; ++dir) {
 		//for (int i = fromDirection, ii = 0; ii < moveVectors.length; i = (i + 1) % moveVectors.length, ++ii) {
 			//nx = x + moveVectors[i][0];
 			//ny = y + moveVectors[i][1];
-			nx = x + vector[0];
-			ny = y + vector[1];
-			c = cell(nx, ny);
-			isInteresting = base.isInteresting(c);
-			isBreakable = breakable(c);
-			if (base.inVisibleBounds(nx, ny) && (c == ' ' || isInteresting || isBreakable)) { // empty or walkable cell
+			nx = x + moveVectors[dir][0];
+			ny = y + moveVectors[dir][1];
+			t = type(nx, ny);
+			flags = World.FLAGS[t];
+			isInteresting = (flags & World.ITEM) != 0;
+			isBreakable = breakable(t);
+			if (base.inVisibleBounds(nx, ny) && ((flags & World.WALKABLE) != 0 || isBreakable)) { // empty or walkable cell
 				next = new State(base, inventory, nx, ny);
 				next.move = move+1;
+				if (facing != NO_FACING) {
+					next.facing = dir; // we turn to face the cell we step into
+				}
 				//next.fromDirection = i;
-				next.destroyed = new HashSet<Position>(destroyed);
+				next.destroyed = destroyed; // immutable, shared until something is broken
 				if (isInteresting) { // we walked onto an item
 					newInventory = new Inventory(inventory); // create a copy
-					newInventory.add(base.w[ny][nx]); // add the item to inventory
+					newInventory.add(base.cell(nx, ny)); // add the item to inventory
 					next.breakCell(nx, ny); // mark the item as broken, so it can't be picked up again
 				} else if (isBreakable) { // we broke an item
 					// determine what has to be consumed to break this
 					newInventory = inventory;
-					switch (c) {
-					case 'T': // tree
+					switch (t) {
+					case World.TREE: // tree
 						if (inventory.get('a') == 0) { // tree and no axe
 							if (!useItems) continue; // don't wanna use items, don't try dynamite
 							newInventory = new Inventory(inventory); // create a copy
@@ -91,7 +159,7 @@ public class State implements Comparable {
 							next.breakCell(nx, ny);
 						}
 						break;
-					case '-': // key
+					case World.DOOR: // key
 						if (inventory.get('k') == 0) { // wall and no key
 							if (!useItems) continue; // don't wanna use items, don't try dynamite
 							newInventory = new Inventory(inventory); // create a copy
@@ -100,7 +168,7 @@ public class State implements Comparable {
 							next.breakCell(nx, ny);
 						}
 						break;
-					case '*': // wall
+					case World.WALL: // wall
 						if (!useItems) continue; // don't wanna use items, don't try dynamite
 						newInventory = new Inventory(inventory); // create a copy
 						newInventory.use('d'); // use a dynamite
@@ -128,10 +196,20 @@ public class State implements Comparable {
 	 * @return
 	 */
 	public char cell(int x, int y) {
-		if (destroyed.contains(new Position(x, y))) {
+		if (destroyed.contains(x, y)) {
 			return ' '; // empty
 		}
-		return base.w[y][x];
+		return base.cell(x, y);
+	}
+	
+	/**
+	 * cell type at a set of coordinates, taking destroyed cells into account (see cell)
+	 */
+	public byte type(int x, int y) {
+		if (destroyed.contains(x, y)) {
+			return World.EMPTY;
+		}
+		return base.type(x, y);
 	}
 	
 	/**
@@ -140,7 +218,7 @@ public class State implements Comparable {
 	 * @param y
 	 */
 	public void breakCell(int x, int y) {
-		destroyed.add(new Position(x, y));
+		destroyed = destroyed.add(x, y);
 	}
 	
 	/**
@@ -149,25 +227,33 @@ public class State implements Comparable {
 	 * @return
 	 */
 	public boolean breakable(char c) {
-		
-		switch (c) {
-		case 'T': // tree needs an axe or dynamite
-			return inventory.get('a') > 0 || inventory.get('d') > 0;
-		case '*': // wall needs dynamite
-			return inventory.get('d') > 0;
-		case '-': // door needs key
-			return inventory.get('k') > 0 || inventory.get('d') > 0;
-		}
-		
-		return false;
+		return breakable(World.typeOf(c));
+	}
+	
+	/**
+	 * Returns whether we can break the given cell type given our inventory
+	 * @param type
+	 * @return
+	 */
+	public boolean breakable(byte type) {
+		int flags = World.FLAGS[type];
+		return ((flags & World.CHOPPABLE) != 0 && inventory.get('a') > 0)
+				|| ((flags & World.OPENABLE) != 0 && inventory.get('k') > 0)
+				|| ((flags & World.BLASTABLE) != 0 && inventory.get('d') > 0);
+	}
+	
+	/**
+	 * Zobrist key of this state: its cell, facing, inventory and destroyed cells.
+	 * The inventory and destroyed set keep their parts up to date as they change, so this is O(1).
+	 */
+	public long key() {
+		long key = Zobrist.position(x, y) ^ Zobrist.facing(facing) ^ destroyed.zobrist();
+		return inventory != null ? key ^ inventory.zobrist() : key;
 	}
 	
 	@Override
 	public int hashCode() {
-		return x
-				+ y * World.LOCAL_MAP_SIZE
-				+ inventory.hashCode() * (World.LOCAL_MAP_SIZE * World.LOCAL_MAP_SIZE)
-				+ destroyed.hashCode() * (World.LOCAL_MAP_SIZE * World.LOCAL_MAP_SIZE * World.LOCAL_MAP_SIZE);
+		return Zobrist.fold(key());
 	}
 	
 	@Override
@@ -175,7 +261,10 @@ public class State implements Comparable {
 		if (o.getClass().equals(this.getClass())) {
 			State s = (State)o;
 			// note: if inventory is null, then it implies inventory is not important for this comparison
-			return x == s.x && y == s.y && (inventory == null || s.inventory == null || inventory.equals(s.inventory)) && destroyed.equals(s.destroyed);
+			if (inventory == null || s.inventory == null) {
+				return x == s.x && y == s.y && destroyed.equals(s.destroyed);
+			}
+			return key() == s.key() && x == s.x && y == s.y && facing == s.facing && inventory.equals(s.inventory) && destroyed.equals(s.destroyed);
 		}
 		return false;
 	}
@@ -1,43 +1,486 @@
 package model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-/** World: the base for all States, with the knowledge of explored cells before any demolition etc is made. **/
+
+/**
+ * World: the base for all States, with the knowledge of explored cells before any demolition etc is made.
+ *
+ * The map is stored in CHUNK_SIZE*CHUNK_SIZE chunks, only allocated once something in them is explored,
+ * so it can grow in any direction and takes memory in proportion to the explored area. Cells are read
+ * with cell(x, y) and written with set(x, y, c); anything never written is unexplored ('x').
+ *
+ * Planners on other threads work on a snapshot(), which shares the chunks with the world it was
+ * taken from until either of them writes one (copy-on-write), so views and actions can keep being
+ * applied while they plan.
+ *
+ * Each cell is stored as a one byte type code (EMPTY, WALL, ...), read with type(x, y). What can be
+ * done with a type is looked up in FLAGS rather than worked out from the character, so the searches
+ * test a cell with an array read and a mask.
+ *
+ * Per-cell arrays (search tables and the like) are indexed by index(x, y), which numbers the cells of
+ * a window over the chunks that covers everything explored with a margin to spare. When exploring
+ * outgrows the window it is enlarged, which renumbers the cells and bumps getVersion(), so anything
+ * holding per-cell arrays knows to size them again.
+ *
+ * Every change to a cell is recorded, and update() publishes what changed since the last update
+ * (getChanges, and the subscribers), so whoever follows the map only has to look at those cells.
+ *
+ * The walkable cells are also kept in connected components (a union-find over the cell indexes),
+ * joined as cells are revealed, chopped or blasted, so whether one cell can be walked to from another
+ * without using anything up is a near constant time lookup (connected). In the rare cases joining
+ * can't follow (a walkable cell stopped being walkable, the window grew) the components are
+ * relabelled from scratch on the next lookup.
+ */
 public class World {
 
-	public char [][] w;
+	// Width and height of view we get from server
+	public static final int VIEW_SIZE = 5;
+	public static final int VIEW_HALF_SIZE = 2;
 
-	// Size of the local map (i.e. how far the agent can explore)
-	public static final int LOCAL_MAP_SIZE = 160;
+	// Agent initially starts here (any cell will do, the map grows in every direction)
+	public static final int START_X = 80;
+	public static final int START_Y = 80;
 
-	// Width and height of view we get from server
-	public static final int VIEW_SIZE = 5; 
-	public static final int VIEW_HALF_SIZE = 2; 
-	
-	// Agent initially starts here
-	public static final int START_X = LOCAL_MAP_SIZE / 2;
-	public static final int START_Y = LOCAL_MAP_SIZE / 2;
+	// Cells can be set from -MAX_COORDINATE to MAX_COORDINATE on either axis: plan States pack their
+	// coordinates into 16 bits (PackedState, CellSet), so further out they would collide
+	public static final int MAX_COORDINATE = Short.MAX_VALUE;
+
+	// Cell types
+	public static final byte UNEXPLORED = 0;
+	public static final byte EMPTY = 1;
+	public static final byte WALL = 2;
+	public static final byte TREE = 3;
+	public static final byte DOOR = 4;
+	public static final byte WATER = 5;
+	public static final byte AXE = 6;
+	public static final byte DYNAMITE = 7;
+	public static final byte GOLD = 8;
+	public static final byte KEY = 9;
+	public static final byte OTHER = 10; // anything else the server might show
+
+	// Cell type flags
+	public static final int WALKABLE = 1; // can be stepped into as it is
+	public static final int ITEM = 2; // picked up by stepping into it
+	public static final int CHOPPABLE = 4; // cleared with an axe
+	public static final int OPENABLE = 8; // cleared with a key
+	public static final int BLASTABLE = 16; // cleared with dynamite
+	public static final int HAZARD = 32; // stepping into it loses the game
+	public static final int TOOL = 64; // an item that clears something
+
+	private static final char [] SYMBOLS = {'x', ' ', '*', 'T', '-', '~', 'a', 'd', 'g', 'k', '?'}; // by type
+	public static final int [] FLAGS = { // by type
+		0,
+		WALKABLE,
+		BLASTABLE,
+		CHOPPABLE | BLASTABLE,
+		OPENABLE | BLASTABLE,
+		HAZARD,
+		WALKABLE | ITEM | TOOL,
+		WALKABLE | ITEM | TOOL,
+		WALKABLE | ITEM,
+		WALKABLE | ITEM | TOOL,
+		0
+	};
+	private static final byte [] TYPES = new byte[128]; // by character
+	static {
+		Arrays.fill(TYPES, OTHER);
+		for (byte t = 0; t < SYMBOLS.length; ++t) {
+			TYPES[SYMBOLS[t]] = t;
+		}
+	}
+
+	public static final int CHUNK_BITS = 4;
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+	private static final int VIEW_COUNTS = CHUNK_CELLS; // offsets of the counts in a chunk
+	private static final int NEAR_COUNTS = 2 * CHUNK_CELLS;
+	private static final int UNEXPLORED_VIEW = VIEW_SIZE * VIEW_SIZE; // counts with nothing explored in view
+	private static final int UNEXPLORED_NEAR = VIEW_SIZE * VIEW_SIZE - 5;
+
+	// unexplored cells the window keeps around anything explored, at least enough for a whole view
+	private static final int MARGIN = VIEW_SIZE;
 
 	public int minx, miny, maxx, maxy; // maximally explored area (for
 										// debugging output and optimisation)
-	
+
+	// The window's chunks, row by row, null where nothing is explored yet. A chunk holds, for each of its cells,
+	// the cell type, then the unexplored cells in the VIEW_SIZE*VIEW_SIZE view from it, then the unexplored cells
+	// among those hasUnexploredNear looks at (the counts are kept up to date by set() so they can be looked up).
+	private byte [][] chunks;
+	private boolean [] shared; // by chunk, whether a snapshot may be reading it, so it has to be copied before it is written
+	private int chunkX0, chunkY0; // chunk coordinates of the window's top left chunk
+	private int chunksWide, chunksHigh;
+	private int originX, originY, width, height; // the window in cells
+	private int version; // bumped whenever the window grows
+	private int edits; // bumped whenever a cell changes type
+
+	private WorldChanges changes = new WorldChanges(); // published by the last update
+	private WorldChanges pending = new WorldChanges(); // made since
+	private List<IWorldSubscriber> subscribers = new ArrayList<IWorldSubscriber>();
+
+	public static final int NO_COMPONENT = -1;
+
+	// Connected components of the walkable cells, by cell:
+	private int [] parent; // next cell towards the component's root (itself at the root), NO_COMPONENT if not walkable
+	private int [] size; // cells in the component, at the root
+	private int [] tools; // tools lying in the component, at the root
+	private boolean relabel; // the components have to be worked out again before the next lookup
+
 	public World() {
-		w = new char[LOCAL_MAP_SIZE][LOCAL_MAP_SIZE];
-		/* Mark all cells as unexplored */
-		for (int y = 0; y < LOCAL_MAP_SIZE; ++y) {
-			for (int x = 0; x < LOCAL_MAP_SIZE; ++x) {
-				w[y][x] = 'x';
+		// start with a few chunks around the start, nothing explored
+		chunkX0 = (START_X >> CHUNK_BITS) - 2;
+		chunkY0 = (START_Y >> CHUNK_BITS) - 2;
+		chunksWide = chunksHigh = 5;
+		chunks = new byte[chunksWide * chunksHigh][];
+		shared = new boolean[chunks.length];
+		window();
+		relabel = true;
+	}
+
+	// a snapshot of src, sharing its chunks
+	private World(World src) {
+		chunkX0 = src.chunkX0;
+		chunkY0 = src.chunkY0;
+		chunksWide = src.chunksWide;
+		chunksHigh = src.chunksHigh;
+		chunks = src.chunks.clone();
+		shared = new boolean[chunks.length];
+		Arrays.fill(shared, true);
+		Arrays.fill(src.shared, true);
+		window();
+		version = src.version;
+		edits = src.edits;
+		minx = src.minx;
+		miny = src.miny;
+		maxx = src.maxx;
+		maxy = src.maxy;
+		relabel = true; // worked out if it is ever asked
+	}
+
+	/**
+	 * Returns a copy of the world as it is now, e.g. for planners running on other threads to hold
+	 * while this one keeps changing. Taking one only copies the chunk directory: the chunks are shared
+	 * until either world writes one, which then writes its own copy (so the first change to a chunk
+	 * after a snapshot costs a chunk copy). The snapshot starts with no changes and no subscribers.
+	 *
+	 * Snapshots can be read from any number of threads, except for the component lookups, which may
+	 * relabel.
+	 */
+	public World snapshot() {
+		return new World(this);
+	}
+
+	/**
+	 * Returns the type of the given character.
+	 */
+	public static byte typeOf(char c) {
+		return c < TYPES.length ? TYPES[c] : OTHER;
+	}
+
+	/**
+	 * Returns the character shown for the given type.
+	 */
+	public static char symbol(byte type) {
+		return SYMBOLS[type];
+	}
+
+	/**
+	 * Returns the type of a cell, UNEXPLORED if it is unexplored.
+	 */
+	public byte type(int x, int y) {
+		int cx = (x >> CHUNK_BITS) - chunkX0;
+		int cy = (y >> CHUNK_BITS) - chunkY0;
+		if (cx < 0 || cy < 0 || cx >= chunksWide || cy >= chunksHigh) {
+			return UNEXPLORED;
+		}
+		byte [] chunk = chunks[cy * chunksWide + cx];
+		if (chunk == null) {
+			return UNEXPLORED;
+		}
+		return chunk[offset(x, y)];
+	}
+
+	// the chunk holding a cell in the window, null if nothing near it is explored
+	private byte [] chunk(int x, int y) {
+		return chunks[((y >> CHUNK_BITS) - chunkY0) * chunksWide + (x >> CHUNK_BITS) - chunkX0];
+	}
+
+	// a cell's place in its chunk
+	private static int offset(int x, int y) {
+		return ((y & CHUNK_MASK) << CHUNK_BITS) | (x & CHUNK_MASK);
+	}
+
+	// the chunk holding a cell in the window, made (or copied from a snapshot) so it can be written
+	private byte [] writable(int x, int y) {
+		int i = ((y >> CHUNK_BITS) - chunkY0) * chunksWide + (x >> CHUNK_BITS) - chunkX0;
+		if (chunks[i] == null) {
+			chunks[i] = new byte[3 * CHUNK_CELLS]; // all UNEXPLORED
+			Arrays.fill(chunks[i], VIEW_COUNTS, NEAR_COUNTS, (byte) UNEXPLORED_VIEW);
+			Arrays.fill(chunks[i], NEAR_COUNTS, 3 * CHUNK_CELLS, (byte) UNEXPLORED_NEAR);
+			shared[i] = false;
+		} else if (shared[i]) {
+			chunks[i] = chunks[i].clone();
+			shared[i] = false;
+		}
+		return chunks[i];
+	}
+
+	/**
+	 * Returns the flags of a cell's type.
+	 */
+	public int flags(int x, int y) {
+		return FLAGS[type(x, y)];
+	}
+
+	/**
+	 * Returns the contents of a cell, 'x' if it is unexplored.
+	 */
+	public char cell(int x, int y) {
+		return SYMBOLS[type(x, y)];
+	}
+
+	/**
+	 * Sets the contents of a cell. Cells should only be changed through here (or update),
+	 * to keep the unexplored counts right. Throws IllegalArgumentException past MAX_COORDINATE.
+	 */
+	public void set(int x, int y, char c) {
+		if (x < -MAX_COORDINATE || x > MAX_COORDINATE || y < -MAX_COORDINATE || y > MAX_COORDINATE) {
+			throw new IllegalArgumentException("Cell (" + x + "," + y + ") is outside the world's limits");
+		}
+		byte old = type(x, y);
+		byte t = typeOf(c);
+		if (old == t) {
+			return;
+		}
+		if (old == UNEXPLORED) {
+			cover(x - MARGIN, y - MARGIN, x + MARGIN, y + MARGIN);
+		}
+		writable(x, y)[offset(x, y)] = t;
+		edits++;
+		pending.add(x, y, old, t);
+		join(x, y, old, t);
+		if (old == UNEXPLORED) {
+			count(x, y, -1);
+		} else if (t == UNEXPLORED) {
+			count(x, y, 1);
+		}
+	}
+
+	// adds to the unexplored counts of every cell that can see the given one
+	private void count(int x, int y, int delta) {
+		for (int dy = -VIEW_HALF_SIZE; dy <= VIEW_HALF_SIZE; ++dy) {
+			for (int dx = -VIEW_HALF_SIZE; dx <= VIEW_HALF_SIZE; ++dx) {
+				// set() keeps the window MARGIN cells around anything explored, so these are in it
+				byte [] chunk = writable(x + dx, y + dy);
+				int cell = offset(x + dx, y + dy);
+				chunk[VIEW_COUNTS + cell] += delta;
+				// hasUnexploredNear skips the cell itself and its diagonal neighbours
+				if (!(dx == 0 && dy == 0) && !(Math.abs(dx) == 1 && Math.abs(dy) == 1)) {
+					chunk[NEAR_COUNTS + cell] += delta;
+				}
+			}
+		}
+	}
+
+	// grows the window to cover the given cells, and a chunk more on the sides it grows on
+	private void cover(int x0, int y0, int x1, int y1) {
+		int cx0 = x0 >> CHUNK_BITS, cy0 = y0 >> CHUNK_BITS;
+		int cx1 = x1 >> CHUNK_BITS, cy1 = y1 >> CHUNK_BITS;
+		int newX0 = chunkX0, newY0 = chunkY0;
+		int newX1 = chunkX0 + chunksWide - 1, newY1 = chunkY0 + chunksHigh - 1;
+		if (cx0 < newX0) newX0 = cx0 - 1;
+		if (cy0 < newY0) newY0 = cy0 - 1;
+		if (cx1 > newX1) newX1 = cx1 + 1;
+		if (cy1 > newY1) newY1 = cy1 + 1;
+		if (newX0 == chunkX0 && newY0 == chunkY0 && newX1 == chunkX0 + chunksWide - 1 && newY1 == chunkY0 + chunksHigh - 1) {
+			return;
+		}
+		int newWide = newX1 - newX0 + 1, newHigh = newY1 - newY0 + 1;
+		byte [][] newChunks = new byte[newWide * newHigh][];
+		boolean [] newShared = new boolean[newWide * newHigh];
+		for (int cy = 0; cy < chunksHigh; ++cy) {
+			int to = (cy + chunkY0 - newY0) * newWide + chunkX0 - newX0;
+			System.arraycopy(chunks, cy * chunksWide, newChunks, to, chunksWide);
+			System.arraycopy(shared, cy * chunksWide, newShared, to, chunksWide);
+		}
+		chunks = newChunks;
+		shared = newShared;
+		chunkX0 = newX0;
+		chunkY0 = newY0;
+		chunksWide = newWide;
+		chunksHigh = newHigh;
+		window();
+		version++;
+		relabel = true; // the cells are numbered differently
+	}
+
+	// keeps the components up to date after a cell changed type
+	private void join(int x, int y, byte old, byte t) {
+		if (relabel) {
+			return; // nothing to keep up to date
+		}
+		boolean wasWalkable = (FLAGS[old] & WALKABLE) != 0;
+		boolean walkable = (FLAGS[t] & WALKABLE) != 0;
+		if (wasWalkable && !walkable) {
+			relabel = true; // components can't be split
+			return;
+		}
+		if (!walkable) {
+			return;
+		}
+		int cell = index(x, y);
+		if (!wasWalkable) {
+			parent[cell] = cell;
+			size[cell] = 1;
+			tools[cell] = 0;
+			if (x > originX) union(cell, cell - 1);
+			if (x < originX + width - 1) union(cell, cell + 1);
+			if (y > originY) union(cell, cell - width);
+			if (y < originY + height - 1) union(cell, cell + width);
+		}
+		tools[find(cell)] += ((FLAGS[t] & TOOL) != 0 ? 1 : 0) - ((FLAGS[old] & TOOL) != 0 ? 1 : 0);
+	}
+
+	// joins the components of two cells, if the second is walkable
+	private void union(int a, int b) {
+		if (parent[b] == NO_COMPONENT) {
+			return;
+		}
+		a = find(a);
+		b = find(b);
+		if (a == b) {
+			return;
+		}
+		if (size[a] < size[b]) {
+			int swap = a;
+			a = b;
+			b = swap;
+		}
+		parent[b] = a;
+		size[a] += size[b];
+		tools[a] += tools[b];
+	}
+
+	// root of a walkable cell's component, halving the path on the way
+	private int find(int cell) {
+		while (parent[cell] != cell) {
+			parent[cell] = parent[parent[cell]];
+			cell = parent[cell];
+		}
+		return cell;
+	}
+
+	// works out every component again
+	private void label() {
+		if (parent == null || parent.length != cellCount()) {
+			parent = new int[cellCount()];
+			size = new int[cellCount()];
+			tools = new int[cellCount()];
+		}
+		Arrays.fill(parent, NO_COMPONENT);
+		relabel = false;
+		for (int y = originY; y < originY + height; ++y) {
+			for (int x = originX; x < originX + width; ++x) {
+				byte t = type(x, y);
+				if (t != UNEXPLORED) {
+					join(x, y, UNEXPLORED, t);
+				}
 			}
 		}
 	}
-	
+
+	/**
+	 * Returns the component of a cell: the same number for every walkable cell that can be walked to
+	 * from it over walkable cells, NO_COMPONENT if it can't be walked on.
+	 * The numbers are only good until the map changes.
+	 */
+	public int component(int x, int y) {
+		if (!inBounds(x, y)) {
+			return NO_COMPONENT;
+		}
+		if (relabel) {
+			label();
+		}
+		int cell = index(x, y);
+		return parent[cell] == NO_COMPONENT ? NO_COMPONENT : find(cell);
+	}
+
+	/**
+	 * Returns whether two walkable cells can be walked between over walkable cells, i.e. without
+	 * clearing anything on the way.
+	 */
+	public boolean connected(int x1, int y1, int x2, int y2) {
+		int c = component(x1, y1);
+		return c != NO_COMPONENT && c == component(x2, y2);
+	}
+
+	/**
+	 * Returns how many tools (axes, keys and dynamite) lie in the component of a walkable cell, 0 if it isn't walkable.
+	 */
+	public int toolsInComponent(int x, int y) {
+		int c = component(x, y);
+		return c == NO_COMPONENT ? 0 : tools[c];
+	}
+
+	private void window() {
+		originX = chunkX0 << CHUNK_BITS;
+		originY = chunkY0 << CHUNK_BITS;
+		width = chunksWide << CHUNK_BITS;
+		height = chunksHigh << CHUNK_BITS;
+	}
+
 	public boolean inVisibleBounds (int x, int y) {
 		return (x >= minx && x <= maxx && y >= miny && y <= maxy);
 	}
-	
+
+	/**
+	 * Returns whether the cell is in the window, i.e. has an index. Every explored cell is.
+	 */
 	public boolean inBounds (int x, int y) {
-		return (x >= 0 && x < LOCAL_MAP_SIZE && y >= 0 && y < LOCAL_MAP_SIZE);
+		return (x >= originX && x < originX + width && y >= originY && y < originY + height);
 	}
-	
+
+	/**
+	 * Number of cells in the window, for per-cell arrays indexed by index(x, y).
+	 */
+	public int cellCount() {
+		return width * height;
+	}
+
+	/**
+	 * Returns a unique index in [0, cellCount()) for the given in bounds cell.
+	 */
+	public int index(int x, int y) {
+		return (x - originX) + (y - originY) * width;
+	}
+
+	public int indexX(int index) {
+		return index % width + originX;
+	}
+
+	public int indexY(int index) {
+		return index / width + originY;
+	}
+
+	/**
+	 * Returns a number that changes whenever the window grows, renumbering the cell indexes.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns a number that changes whenever a cell changes type, so whatever was worked out from
+	 * the cells can be kept until it does.
+	 */
+	public int getEdits() {
+		return edits;
+	}
+
 	/**
 	 * Update the world with the VIEW_SIZE*VIEW_SIZE view centered around the given coordinates.
 	 * Ensure the view is rotated appropriately!
@@ -48,15 +491,66 @@ public class World {
 			for (int x = posx - VIEW_HALF_SIZE, xx = 0; x <= posx + VIEW_HALF_SIZE; ++x, ++xx) {
 				piece = view[yy][xx];
 				if (piece == 0) piece = ' '; // null piece is empty
-				w[y][x] = piece;
+				set(x, y, piece);
 			}
 		}
-		
-		minx = Math.max(0, Math.min(minx, posx - VIEW_HALF_SIZE));
-		maxx = Math.min(LOCAL_MAP_SIZE - 1, Math.max(maxx, posx + VIEW_HALF_SIZE + 1));
-		miny = Math.max(0, Math.min(miny, posy - VIEW_HALF_SIZE));
-		maxy = Math.min(LOCAL_MAP_SIZE - 1, Math.max(maxy, posy + VIEW_HALF_SIZE + 1));
-		
+
+		minx = Math.min(minx, posx - VIEW_HALF_SIZE);
+		maxx = Math.max(maxx, posx + VIEW_HALF_SIZE + 1);
+		miny = Math.min(miny, posy - VIEW_HALF_SIZE);
+		maxy = Math.max(maxy, posy + VIEW_HALF_SIZE + 1);
+
+		publish();
+	}
+
+	/**
+	 * Publishes the changes made since they were last published, to getChanges() and to
+	 * the subscribers if there are any. update() does this itself.
+	 */
+	public void publish() {
+		// swap the sets rather than allocate
+		WorldChanges published = pending;
+		pending = changes;
+		pending.clear();
+		changes = published;
+		if (changes.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < subscribers.size(); ++i) {
+			subscribers.get(i).onWorldChanged(this, changes);
+		}
+	}
+
+	/**
+	 * Returns the cells the last update changed (including changes made since the update before).
+	 */
+	public WorldChanges getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Has the given subscriber told of the changes every update makes.
+	 */
+	public void addSubscriber(IWorldSubscriber sub) {
+		subscribers.add(sub);
+	}
+
+	/**
+	 * Returns whether there are unexplored cells next to the given cell, or on the edge of the
+	 * view we would get standing there (so moving there would show us something new).
+	 */
+	public boolean hasUnexploredNear(int x, int y) {
+		// next to it, or on the edge of the view 2 cells out
+		byte [] chunk = inBounds(x, y) ? chunk(x, y) : null;
+		return chunk == null || chunk[NEAR_COUNTS + offset(x, y)] > 0;
+	}
+
+	/**
+	 * Returns how many unexplored cells the view from the given cell would show.
+	 */
+	public int unexploredInView(int x, int y) {
+		byte [] chunk = inBounds(x, y) ? chunk(x, y) : null;
+		return chunk == null ? UNEXPLORED_VIEW : chunk[VIEW_COUNTS + offset(x, y)];
 	}
 
 	/**
@@ -65,15 +559,6 @@ public class World {
 	 * @return
 	 */
 	public boolean isInteresting(char c) {
-
-		switch (c) {
-			case 'a':
-			case 'd':
-			case 'g':
-			case 'k':
-				return true;
-			default:
-				return false;
-		}
+		return (FLAGS[typeOf(c)] & ITEM) != 0;
 	}
 }
@@ -0,0 +1,81 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The cells of a World that changed between two updates: each with its type before and after, and the
+ * rectangle around them. A cell changed more than once appears once per change, in order.
+ *
+ * The World reuses its change sets from turn to turn, so a set is only good until the next update,
+ * and a turn that changes nothing allocates nothing.
+ */
+public class WorldChanges {
+
+	private int [] xs, ys;
+	private byte [] from, to; // cell types before and after
+	private int size;
+
+	public int minx, miny, maxx, maxy; // rectangle around the changed cells, inclusive (nothing if empty)
+
+	WorldChanges() {
+		xs = new int[64];
+		ys = new int[64];
+		from = new byte[64];
+		to = new byte[64];
+		clear();
+	}
+
+	void clear() {
+		size = 0;
+		minx = miny = Integer.MAX_VALUE;
+		maxx = maxy = Integer.MIN_VALUE;
+	}
+
+	void add(int x, int y, byte oldType, byte newType) {
+		if (size == xs.length) {
+			xs = Arrays.copyOf(xs, size * 2);
+			ys = Arrays.copyOf(ys, size * 2);
+			from = Arrays.copyOf(from, size * 2);
+			to = Arrays.copyOf(to, size * 2);
+		}
+		xs[size] = x;
+		ys[size] = y;
+		from[size] = oldType;
+		to[size] = newType;
+		size++;
+		minx = Math.min(minx, x);
+		miny = Math.min(miny, y);
+		maxx = Math.max(maxx, x);
+		maxy = Math.max(maxy, y);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getX(int i) {
+		return xs[i];
+	}
+
+	public int getY(int i) {
+		return ys[i];
+	}
+
+	/**
+	 * Returns the type the i'th changed cell had before.
+	 */
+	public byte getFrom(int i) {
+		return from[i];
+	}
+
+	/**
+	 * Returns the type the i'th changed cell has now.
+	 */
+	public byte getTo(int i) {
+		return to[i];
+	}
+}
@@ -0,0 +1,76 @@
+package model;
+
+/**
+ * Zobrist keys for plan States.
+ *
+ * Every feature a State can have (its cell, its facing, holding n of an item, having destroyed a
+ * cell) gets a pseudo random 64-bit key, and a State's key is the XOR of the keys of its features.
+ * Changing one feature is then a couple of XORs, so Inventory and CellSet keep their part of the key
+ * up to date as they change instead of rehashing their contents.
+ *
+ * The keys come from a fixed mixing function rather than a table, so they don't depend on the map size.
+ */
+public class Zobrist {
+
+	private static final long POSITION_SEED = 0x2545F4914F6CDD1DL;
+	private static final long DESTROYED_SEED = 0x6A09E667F3BCC909L;
+	private static final long ITEM_SEED = 0x3C6EF372FE94F82BL;
+	private static final long FACING_SEED = 0xA54FF53A5F1D36F1L;
+
+	private Zobrist() {
+	}
+
+	/**
+	 * Key for a State standing on the given cell.
+	 */
+	public static long position(int x, int y) {
+		return mix(POSITION_SEED ^ cell(x, y));
+	}
+
+	/**
+	 * Key for a State facing the given direction. Untracked facing (State.NO_FACING) contributes nothing.
+	 */
+	public static long facing(int facing) {
+		if (facing == State.NO_FACING) {
+			return 0;
+		}
+		return mix(FACING_SEED ^ facing);
+	}
+
+	/**
+	 * Key for the given cell having been destroyed.
+	 */
+	public static long destroyed(int x, int y) {
+		return mix(DESTROYED_SEED ^ cell(x, y));
+	}
+
+	/**
+	 * Key for holding the given number of an item. Holding none contributes nothing,
+	 * so an item that was used up hashes the same as one never picked up.
+	 */
+	public static long item(char item, int count) {
+		if (count == 0) {
+			return 0;
+		}
+		return mix(ITEM_SEED ^ (((long) item) << 32) ^ count);
+	}
+
+	/**
+	 * Folds a key down to an int hash code.
+	 */
+	public static int fold(long key) {
+		return (int) (key ^ (key >>> 32));
+	}
+
+	private static long cell(int x, int y) {
+		return ((long) y << 32) ^ (x & 0xFFFFFFFFL);
+	}
+
+	// splitmix64 finaliser
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
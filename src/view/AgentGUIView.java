@@ -121,8 +121,8 @@ public class AgentGUIView implements IAgentView, IMovePanelSubscriber, KeyListen
 		// update everything
 		tiTurns.update();
 		
-		// update the world map with just the area explored so far
-		wmWorld.update(agent.getMinX(), agent.getMaxX(), agent.getMinY(), agent.getMaxY());
+		// redraw just what changed on the world map
+		wmWorld.refresh();
 
 		// scroll the character into view
 		cx = wmWorld.getCharacterX();
@@ -2,44 +2,56 @@ package view.gui;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JPanel;
 
 import logic.Agent;
 import model.Goal;
+import model.IWorldSubscriber;
+import model.Position;
 import model.State;
+import model.World;
+import model.WorldChanges;
 
 /**
  * Displays the worldmap (local map knowledge) for a given agent
  * @author Randal Grant
  *
  */
-public class WorldMap extends JPanel {
+public class WorldMap extends JPanel implements IWorldSubscriber {
 
 	private Agent agent;
-	private WorldPiece [][] pieces;
+	private Map<Position, WorldPiece> pieces; // by map cell, once explored
 	
-	public static final int WORLDMAP_WIDTH = 6400;
-	public static final int WORLDMAP_HEIGHT = 6400;
+	// cells shown across and down to begin with, more are added as the map grows
+	public static final int WORLDMAP_CELLS = 160;
 	
 	private java.util.List<WorldPiece> pathPieces; 
 	private Goal lastPOI;
 	
 	// ideally the pieces are square... make your decision
-	private static final int PIECE_WIDTH = WORLDMAP_WIDTH / Agent.LOCAL_MAP_SIZE; // width of pieces
-	private static final int PIECE_HEIGHT = WORLDMAP_HEIGHT / Agent.LOCAL_MAP_SIZE; // height of pieces
+	private static final int PIECE_WIDTH = 40; // width of pieces
+	private static final int PIECE_HEIGHT = 40; // height of pieces
 	
+	private int originX, originY; // map cell shown in the top left corner
+	private int cellsWide, cellsHigh; // map cells shown
+	
+	// cells that need redrawing since the last refresh (nothing if min > max), and where the agent was drawn
+	private int dirtyMinX, dirtyMaxX, dirtyMinY, dirtyMaxY;
+	private int drawnX, drawnY;
 	
 	public WorldMap(Agent agent) {
 		super(null);
-		this.setPreferredSize(new Dimension(WORLDMAP_WIDTH, WORLDMAP_HEIGHT));
 		this.agent = agent;
-		this.pieces = new WorldPiece[Agent.LOCAL_MAP_SIZE][];
-		for (int i = 0; i < Agent.LOCAL_MAP_SIZE; ++i) {
-			this.pieces[i] = new WorldPiece[Agent.LOCAL_MAP_SIZE];
-		}
+		this.pieces = new HashMap<Position, WorldPiece>();
+		originX = agent.getInitX() - WORLDMAP_CELLS / 2;
+		originY = agent.getInitY() - WORLDMAP_CELLS / 2;
+		cellsWide = cellsHigh = WORLDMAP_CELLS;
+		this.setPreferredSize(new Dimension(cellsWide * PIECE_WIDTH, cellsHigh * PIECE_HEIGHT));
 		
 		// black colour to represent unexplored
 		this.setBackground(Color.BLACK);
@@ -48,16 +60,85 @@ public class WorldMap extends JPanel {
 		
 		// initialise A* debugging list
 		pathPieces = new LinkedList<WorldPiece>();
-		//update(0, Agent.LOCAL_MAP_SIZE-1, 0, Agent.LOCAL_MAP_SIZE-1);
+		//update(originX, originX + cellsWide - 1, originY, originY + cellsHigh - 1);
+		
+		// draw what is already explored on the first refresh, then follow the changes
+		dirtyMinX = agent.getMinX();
+		dirtyMaxX = agent.getMaxX();
+		dirtyMinY = agent.getMinY();
+		dirtyMaxY = agent.getMaxY();
+		drawnX = agent.getX();
+		drawnY = agent.getY();
+		agent.w.addSubscriber(this);
+	}
+	
+	@Override
+	public void onWorldChanged(World w, WorldChanges changes) {
+		// the unexplored marker of cells up to VIEW_HALF_SIZE away can change too
+		dirty(changes.minx - World.VIEW_HALF_SIZE, changes.maxx + World.VIEW_HALF_SIZE,
+				changes.miny - World.VIEW_HALF_SIZE, changes.maxy + World.VIEW_HALF_SIZE);
+	}
+	
+	private void dirty(int minx, int maxx, int miny, int maxy) {
+		if (dirtyMinX > dirtyMaxX) {
+			dirtyMinX = minx;
+			dirtyMaxX = maxx;
+			dirtyMinY = miny;
+			dirtyMaxY = maxy;
+		} else {
+			dirtyMinX = Math.min(dirtyMinX, minx);
+			dirtyMaxX = Math.max(dirtyMaxX, maxx);
+			dirtyMinY = Math.min(dirtyMinY, miny);
+			dirtyMaxY = Math.max(dirtyMaxY, maxy);
+		}
+	}
+	
+	/**
+	 * Redraws what changed since the last refresh: the cells the world reported changed and the
+	 * cells around them, and where the agent was and is.
+	 */
+	public void refresh() {
+		dirty(drawnX, drawnX, drawnY, drawnY);
+		dirty(agent.getX(), agent.getX(), agent.getY(), agent.getY());
+		drawnX = agent.getX();
+		drawnY = agent.getY();
+		update(Math.max(dirtyMinX, agent.getMinX()), Math.min(dirtyMaxX, agent.getMaxX()),
+				Math.max(dirtyMinY, agent.getMinY()), Math.min(dirtyMaxY, agent.getMaxY()));
+		dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+		dirtyMaxX = dirtyMaxY = Integer.MIN_VALUE;
 	}
 	
 	
 	public int getCharacterX() {
-		return PIECE_WIDTH * agent.getX();
+		return PIECE_WIDTH * (agent.getX() - originX);
 	}
 	
 	public int getCharacterY() {
-		return PIECE_HEIGHT * agent.getY();
+		return PIECE_HEIGHT * (agent.getY() - originY);
+	}
+	
+	private WorldPiece pieceAt(int x, int y) {
+		return pieces.get(new Position(x, y));
+	}
+	
+	/**
+	 * Makes room for the given map cells, moving every piece if the map grew up or left.
+	 */
+	private void cover(int minx, int maxx, int miny, int maxy) {
+		if (minx >= originX && miny >= originY && maxx < originX + cellsWide && maxy < originY + cellsHigh) {
+			return;
+		}
+		int right = Math.max(maxx + 1, originX + cellsWide);
+		int bottom = Math.max(maxy + 1, originY + cellsHigh);
+		originX = Math.min(minx, originX);
+		originY = Math.min(miny, originY);
+		cellsWide = right - originX;
+		cellsHigh = bottom - originY;
+		for (WorldPiece piece : pieces.values()) {
+			piece.setBounds((piece.x - originX) * PIECE_WIDTH, (piece.y - originY) * PIECE_HEIGHT, PIECE_WIDTH, PIECE_HEIGHT);
+		}
+		setPreferredSize(new Dimension(cellsWide * PIECE_WIDTH, cellsHigh * PIECE_HEIGHT));
+		revalidate();
 	}
 	
 	/**
@@ -75,11 +156,11 @@ public class WorldMap extends JPanel {
 		
 		agentPOI = agent.getCurrentGoal();
 		if (agentPOI != null) {
-			if (lastPOI != null && pieces[lastPOI.getY()][lastPOI.getX()] != null) {
-				pieces[lastPOI.getY()][lastPOI.getX()].setTagged(null);
+			if (lastPOI != null && pieceAt(lastPOI.getX(), lastPOI.getY()) != null) {
+				pieceAt(lastPOI.getX(), lastPOI.getY()).setTagged(null);
 			}
-			if (agentPOI != null && pieces[agentPOI.getY()][agentPOI.getX()] != null) {
-				pieces[agentPOI.getY()][agentPOI.getX()].setTagged(Color.ORANGE);
+			if (agentPOI != null && pieceAt(agentPOI.getX(), agentPOI.getY()) != null) {
+				pieceAt(agentPOI.getX(), agentPOI.getY()).setTagged(Color.ORANGE);
 				lastPOI = agentPOI;
 			}
 			
@@ -90,16 +171,15 @@ public class WorldMap extends JPanel {
 			
 			/* get A* path */
 			List<State> pathPositions = agentPOI.getPath();
-			if (pathPositions == null) {
-				return;
-			}
-			/* tag all the pieces on the path to the goal */
-			for (State p : pathPositions) {
-				// tag the piece 
-				WorldPiece pc = pieces[p.y][p.x];
-				if (pc != null) {
-					pc.setTagged(Color.BLUE);
-					pathPieces.add(pc);
+			if (pathPositions != null) {
+				/* tag all the pieces on the path to the goal */
+				for (State p : pathPositions) {
+					// tag the piece 
+					WorldPiece pc = pieceAt(p.x, p.y);
+					if (pc != null) {
+						pc.setTagged(Color.BLUE);
+						pathPieces.add(pc);
+					}
 				}
 			}
 		}
@@ -108,18 +188,19 @@ public class WorldMap extends JPanel {
 		
 
 		//System.out.println("Update: " + minx + "," + miny + " to " + maxx + "," + maxy);
+		cover(minx, maxx, miny, maxy);
 		for (yy = miny; yy <= maxy; ++yy) {
 			for (xx = minx; xx <= maxx; ++xx) {
 				chr = agent.charAt(xx, yy);
 				if (chr == 'x') { // unexplored
 					continue;
 				}
-				piece = pieces[yy][xx];
+				piece = pieceAt(xx, yy);
 				if (piece == null) {
 					piece = new WorldPiece(this, (xx % 2) == (yy % 2), xx, yy);
-					pieces[yy][xx] = piece;
+					pieces.put(new Position(xx, yy), piece);
 					this.add(piece);
-					piece.setBounds(xx * PIECE_WIDTH, yy * PIECE_HEIGHT, PIECE_WIDTH, PIECE_HEIGHT);
+					piece.setBounds((xx - originX) * PIECE_WIDTH, (yy - originY) * PIECE_HEIGHT, PIECE_WIDTH, PIECE_HEIGHT);
 				}
 				piece.score = agent.getScore(xx,  yy);
 				if (xx == agent.getX() && yy == agent.getY()) {
@@ -165,7 +246,7 @@ public class WorldMap extends JPanel {
 			/* tag all the pieces on the path to the goal */
 			for (State p : pathPositions) {
 				// tag the piece 
-				WorldPiece pc = pieces[p.y][p.x];
+				WorldPiece pc = pieceAt(p.x, p.y);
 				if (pc != null) {
 					pc.setTagged(Color.GREEN);
 					pathPieces.add(pc);